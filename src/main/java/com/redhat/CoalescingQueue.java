@@ -0,0 +1,82 @@
+package com.redhat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded queue holding only the latest value offered for each key.
+ * A value offered for a key already queued replaces it, keeping its place in the queue.
+ * Offering never waits, when full a value for a new key is dropped, and counted, instead.
+ */
+class CoalescingQueue<K, V> {
+    private final int capacity;
+    private Map<K, V> pending = new LinkedHashMap<>();
+    private long coalesced;
+    private long dropped;
+    private boolean overflowed;
+
+    CoalescingQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false if the value was dropped, as the queue is full
+     */
+    synchronized boolean offer(K key, V value) {
+        if (pending.containsKey(key)) {
+            pending.put(key, value);
+            coalesced++;
+            return true;
+        }
+
+        if (pending.size() >= capacity) {
+            dropped++;
+            overflowed = true;
+            return false;
+        }
+
+        pending.put(key, value);
+        return true;
+    }
+
+    /**
+     * Remove all queued values, in the order their keys were first queued.
+     */
+    synchronized List<V> drain() {
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+
+        final List<V> values = new ArrayList<>(pending.values());
+        pending = new LinkedHashMap<>();
+        return values;
+    }
+
+    /**
+     * @return true if any value was dropped since the last call
+     */
+    synchronized boolean resetOverflowed() {
+        final boolean wasOverflowed = overflowed;
+        overflowed = false;
+        return wasOverflowed;
+    }
+
+    synchronized void clear() {
+        pending.clear();
+        overflowed = false;
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    synchronized long coalesced() {
+        return coalesced;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,158 @@
+package com.redhat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.jboss.logging.Logger;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+
+/**
+ * A single named resource installed by the operator, with its live state kept in memory by an informer.
+ * Writes made through it are reflected immediately, without waiting for the informer to see them.
+ * Until the informer has listed the resource, or if it couldn't be started, reads go to the API server.
+ */
+class ManagedResource<T extends HasMetadata> implements ResourceEventHandler<T> {
+    private static final Logger LOG = Logger.getLogger(ManagedResource.class);
+
+    static final String DESIRED_STATE_ANNOTATION = "appsvcs.redhat.com/desired-state-hash";
+
+    private final Resource<T> resource;
+    // The part of the resource set by the operator, anything else may be changed by the API server
+    private final Function<T, Object> managedState;
+    private final AtomicReference<T> current = new AtomicReference<>();
+
+    private SharedIndexInformer<T> informer;
+
+    ManagedResource(Resource<T> resource, Function<T, Object> managedState) {
+        this.resource = resource;
+        this.managedState = managedState;
+    }
+
+    synchronized void start() {
+        if (informer != null) {
+            return;
+        }
+
+        try {
+            informer = resource.inform(this, 0);
+        } catch (Exception e) {
+            LOG.warn("Failed to start informer, reading from the API server instead", e);
+        }
+    }
+
+    synchronized void stop() {
+        if (informer != null) {
+            informer.stop();
+            informer = null;
+        }
+        current.set(null);
+    }
+
+    synchronized boolean started() {
+        return informer != null;
+    }
+
+    /**
+     * @return the live resource, or null if it doesn't exist
+     */
+    T get() {
+        if (!synced()) {
+            return resource.get();
+        }
+
+        return current.get();
+    }
+
+    /**
+     * Write the desired resource, unless the live one was written from the same desired state and hasn't been changed since.
+     *
+     * @return the written resource, or null if the live one was already up to date
+     */
+    T apply(T desired) {
+        final String desiredHash = hash(desired);
+        final T live = get();
+        if (live != null && desiredHash.equals(annotation(live)) && desiredHash.equals(hash(live))) {
+            return null;
+        }
+
+        final Map<String, String> annotations = desired.getMetadata().getAnnotations() != null
+            ? new HashMap<>(desired.getMetadata().getAnnotations())
+            : new HashMap<>();
+        annotations.put(DESIRED_STATE_ANNOTATION, desiredHash);
+        desired.getMetadata().setAnnotations(annotations);
+        return createOrReplace(desired);
+    }
+
+    private T createOrReplace(T desired) {
+        @SuppressWarnings("unchecked")
+        final T applied = resource.createOrReplace(desired);
+        if (synced()) {
+            current.set(applied);
+        }
+        return applied;
+    }
+
+    /**
+     * @return true if the resource existed, and was deleted
+     */
+    boolean delete() {
+        if (get() == null) {
+            return false;
+        }
+
+        final Boolean deleted = resource.delete();
+        if (synced()) {
+            current.set(null);
+        }
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    String hash(T obj) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(Serialization.asJson(managedState.apply(obj)).getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hash = new StringBuilder();
+            for (byte b : digest) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String annotation(HasMetadata obj) {
+        final Map<String, String> annotations = obj.getMetadata().getAnnotations();
+        return annotations != null ? annotations.get(DESIRED_STATE_ANNOTATION) : null;
+    }
+
+    private synchronized boolean synced() {
+        return informer != null && informer.hasSynced();
+    }
+
+    @Override
+    public void onAdd(T obj) {
+        current.set(obj);
+    }
+
+    @Override
+    public void onUpdate(T oldObj, T newObj) {
+        current.set(newObj);
+    }
+
+    @Override
+    public void onDelete(T obj, boolean deletedFinalStateUnknown) {
+        current.set(null);
+    }
+}
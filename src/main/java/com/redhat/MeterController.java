@@ -1,24 +1,42 @@
 package com.redhat;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.api.model.rbac.Role;
 import io.fabric8.kubernetes.api.model.rbac.RoleBinding;
 import io.fabric8.kubernetes.api.model.rbac.RoleBindingBuilder;
 import io.fabric8.kubernetes.api.model.rbac.RoleBuilder;
-import io.fabric8.kubernetes.client.Watch;
-import io.fabric8.kubernetes.client.dsl.Resource;
 import io.fabric8.openshift.api.model.monitoring.v1.PrometheusRule;
 import io.fabric8.openshift.api.model.monitoring.v1.PrometheusRuleBuilder;
+import io.fabric8.openshift.api.model.monitoring.v1.Rule;
+import io.fabric8.openshift.api.model.monitoring.v1.RuleBuilder;
 import io.fabric8.openshift.api.model.monitoring.v1.ServiceMonitor;
 import io.fabric8.openshift.api.model.monitoring.v1.ServiceMonitorBuilder;
 import io.fabric8.openshift.client.OpenShiftClient;
 import io.javaoperatorsdk.operator.api.*;
 import io.javaoperatorsdk.operator.api.Context;
+import io.javaoperatorsdk.operator.processing.event.EventSourceManager;
+import io.javaoperatorsdk.operator.processing.event.internal.TimerEventSource;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 
 @Controller
 public class MeterController implements ResourceController<Meter> {
@@ -29,14 +47,34 @@ public class MeterController implements ResourceController<Meter> {
     private static final String SERVICE_MONITOR_NAME = "application-services-operator-metrics";
     private static final String OPENSHIFT_MONITORING_NAMESPACE = "openshift-monitoring";
     private static final String PROMETHEUS_RULES_NAME = "application-services-operator-metrics-prometheus-rules";
+    private static final int MANAGED_RESOURCE_COUNT = 4;
 
     private final MeterRegistry meterRegistry;
     private final OpenShiftClient client;
     private final OperatorConfig config;
     private final String applicationName;
 
-    private PodWatcher podWatcher;
-    private Watch watchHandle;
+    // Installed resources, their state read from informers rather than on every reconcile
+    private final ManagedResource<Role> roleResource;
+    private final ManagedResource<RoleBinding> roleBindingResource;
+    private final ManagedResource<PrometheusRule> prometheusRuleResource;
+    private final ManagedResource<ServiceMonitor> serviceMonitorResource;
+
+    // Applies the independent resources at the same time, its threads only kept while applying
+    private final ThreadPoolExecutor applyExecutor;
+
+    // Pod events shared by the watchers of every Meter, only present while a Meter is watching pods
+    private PodEventSource podEventSource;
+    // Key - Meter name, Value - Watcher of the Meter's pods
+    private final Map<String, PodWatcher> podWatchers = new HashMap<>();
+    // Key - Meter name, Value - When the watched pod count in the Meter status last changed
+    private final Map<String, Long> lastWatchedPodsUpdates = new HashMap<>();
+    // Key - Meter name, Value - Meter refused collection as another Meter meters its pods, reconciled again once a watcher stops
+    private final Map<String, Meter> refusedMeters = new HashMap<>();
+
+    // Reconciles a Meter again once its held back status can be written, or it may collect,
+    // only present once registered with the operator
+    private TimerEventSource timerEventSource;
 
     public MeterController(OpenShiftClient client, MeterRegistry meterRegistry, OperatorConfig config,
         @ConfigProperty(name = "quarkus.application.name") String applicationName) {
@@ -44,227 +82,348 @@ public class MeterController implements ResourceController<Meter> {
         this.meterRegistry = meterRegistry;
         this.config = config;
         this.applicationName = applicationName;
+
+        this.roleResource = new ManagedResource<>(client.rbac().roles().withName(ROLE_NAME),
+            Role::getRules);
+        this.roleBindingResource = new ManagedResource<>(client.rbac().roleBindings().withName(ROLE_BINDING_NAME),
+            roleBinding -> Arrays.asList(roleBinding.getSubjects(), roleBinding.getRoleRef()));
+        this.prometheusRuleResource = new ManagedResource<>(client.monitoring().prometheusRules()
+            .inNamespace(OPENSHIFT_MONITORING_NAMESPACE).withName(PROMETHEUS_RULES_NAME), PrometheusRule::getSpec);
+        this.serviceMonitorResource = new ManagedResource<>(client.monitoring().serviceMonitors()
+            .inNamespace(OPENSHIFT_MONITORING_NAMESPACE).withName(SERVICE_MONITOR_NAME), ServiceMonitor::getSpec);
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.applyExecutor = new ThreadPoolExecutor(MANAGED_RESOURCE_COUNT, MANAGED_RESOURCE_COUNT,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "resource-apply-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.applyExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public synchronized void init(EventSourceManager eventSourceManager) {
+        timerEventSource = new TimerEventSource();
+        eventSourceManager.registerEventSource("meter-timer", timerEventSource);
     }
 
+    // Synchronized, as Meters are reconciled concurrently while sharing the watchers and installed resources
     @Override
-    public DeleteControl deleteResource(Meter resource, Context<Meter> context) {
+    public synchronized DeleteControl deleteResource(Meter resource, Context<Meter> context) {
         LOG.info("Meter CustomResource deleted.");
-        if (watchHandle != null) {
-            watchHandle.close();
+        final String meterName = meterName(resource);
+        refusedMeters.remove(meterName);
+        stopWatcher(meterName);
+        lastWatchedPodsUpdates.remove(meterName);
 
-            if (podWatcher != null) {
-                podWatcher = null;
-            }
+        if (podWatchers.isEmpty() && refusedMeters.isEmpty()) {
+            // Read from the informers if still running, starting them just to delete would cost more than reading directly
+            deleteServiceMonitor();
+            // Nothing left to manage until a Meter collects again
+            stopInformers();
         }
 
-        deleteServiceMonitor();
-
         return DeleteControl.DEFAULT_DELETE;
     }
 
     @Override
-    public UpdateControl<Meter> createOrUpdateResource(Meter resource, Context<Meter> context) {
+    public synchronized UpdateControl<Meter> createOrUpdateResource(Meter resource, Context<Meter> context) {
         if (resource.isMarkedForDeletion()) {
             LOG.info("Meter CustomResource marked for deletion, no reconciliation performed.");
             return UpdateControl.noUpdate();
         }
 
         final MeterSpec spec = resource.getSpec();
+        final String meterName = meterName(resource);
 
         if (spec.getMeterCollectionEnabled()) {
             // Meter Collection enabled
             LOG.info("Meter collection enabled.");
+            startInformers();
             createServiceMonitor();
 
             // Handle PodWatcher
-            if (podWatcher != null) {
+            final PodWatcher podWatcher = podWatchers.get(meterName);
+            final String conflictingMeter = conflictingMeter(meterName, spec);
+            if (conflictingMeter != null) {
+                // The recording rules sum the usage of every Meter, so the same pods must not be metered twice
+                LOG.warn(config.meter().meterLabel().isPresent()
+                    ? "Meter collection not started, pods of the same namespaces are metered by Meter " + conflictingMeter + "."
+                    : "Meter collection not started, Meter " + conflictingMeter + " is already collecting. "
+                        + "Set operator.meter.meter-label for several Meters to collect.");
+                stopWatcher(meterName);
+                refusedMeters.put(meterName, resource);
+            } else if (podWatcher != null) {
                 // Update existing watcher
                 LOG.info("Updating Meter spec in PodWatcher.");
                 podWatcher.updateSpec(spec);
             } else {
-                // Set up new watcher
+                // Set up new watcher, sharing the pod events of other Meters
                 LOG.info("Creating a new PodWatcher.");
-                podWatcher = new PodWatcher(client, meterRegistry, spec, config);
-                watchHandle = client.pods().inAnyNamespace().watch(podWatcher);
+                refusedMeters.remove(meterName);
+                if (podEventSource == null) {
+                    podEventSource = new PodEventSource(client, meterRegistry, config);
+                }
+                final PodWatcher newWatcher = new PodWatcher(podEventSource, meterRegistry, spec, config, meterTags(meterName));
+                podWatchers.put(meterName, newWatcher);
+                newWatcher.start();
             }
         } else {
             // Meter collection disabled
             LOG.info("Meter collection disabled.");
-            deleteServiceMonitor();
+            refusedMeters.remove(meterName);
+            if (podWatchers.keySet().stream().allMatch(meterName::equals) && refusedMeters.isEmpty()) {
+                // No other Meter is collecting, or waiting to collect
+                deleteServiceMonitor();
+                // Nothing left to manage until a Meter collects again
+                stopInformers();
+            }
 
             // Handle Watcher
-            if (watchHandle != null) {
-                watchHandle.close();
+            if (stopWatcher(meterName)) {
                 LOG.info("Stopped watching for events. No further metrics captured.");
-
-                if (podWatcher != null) {
-                    podWatcher = null;
-                }
             }
         }
 
-        resource.setStatus(constructStatus());
+        final MeterStatus currentStatus = resource.getStatus();
+        final MeterStatus status = constructStatus(resource, meterName);
+        if (status.equals(currentStatus)) {
+            // Nothing to write, avoiding another event for the Meter
+            return UpdateControl.noUpdate();
+        }
+
+        if (currentStatus == null || !Objects.equals(status.getWatchedPods(), currentStatus.getWatchedPods())) {
+            lastWatchedPodsUpdates.put(meterName, System.nanoTime());
+        }
+        resource.setStatus(status);
         return UpdateControl.updateStatusSubResource(resource);
     }
 
+    // Only the resources which are missing, or differ from their desired state, are written
     void createServiceMonitor() {
-        if (serviceMonitor().get() != null) {
-            // Don't repeat the install
-            return;
+        final CompletableFuture<Role> role = apply(roleResource, this::desiredRole, "Role");
+        final CompletableFuture<RoleBinding> roleBinding = apply(roleBindingResource, this::desiredRoleBinding, "RoleBinding");
+        final CompletableFuture<PrometheusRule> promRule = apply(prometheusRuleResource, this::desiredPrometheusRule, "PrometheusRule");
+        final CompletableFuture<ServiceMonitor> monitor = apply(serviceMonitorResource, this::desiredServiceMonitor, "ServiceMonitor");
+        CompletableFuture.allOf(role, roleBinding, promRule, monitor).join();
+
+        final ServiceMonitor installed = monitor.join();
+        if (installed != null && installed.getMetadata().getResourceVersion() != null
+                && !installed.getMetadata().getResourceVersion().isEmpty()) {
+            LOG.info("ServiceMonitor " + SERVICE_MONITOR_NAME + " installed.");
         }
+    }
 
-        try {
-            // Create Role
-            Role role = new RoleBuilder()
-                    .withNewMetadata()
-                        .withName(ROLE_NAME)
-                    .endMetadata()
-                    .addNewRule()
-                        .addNewApiGroup("")
-                        .withResources("pods", "services", "endpoints")
-                        .withVerbs("get", "list", "watch")
-                    .endRule()
-                    .build();
-            role = client.rbac().roles().createOrReplace(role);
-
-            if (role.getMetadata().getResourceVersion() == null) {
-                // No exception, but Role not created properly
-                return;
+    private <T extends HasMetadata> CompletableFuture<T> apply(ManagedResource<T> resource, Supplier<T> desired, String kind) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return resource.apply(desired.get());
+            } catch (Exception e) {
+                LOG.error("Failed to create " + kind, e);
+                return null;
             }
-        } catch (Exception e) {
-            LOG.error("Failed to create Role", e);
-            return;
-        }
+        }, applyExecutor);
+    }
 
-        try {
-            // Create RoleBinding
-            RoleBinding roleBinding = new RoleBindingBuilder()
-                    .withNewMetadata()
-                        .withName(ROLE_BINDING_NAME)
-                    .endMetadata()
-                    .addNewSubject()
-                        .withKind("ServiceAccount")
-                        .withName("prometheus-k8s")
-                        .withNamespace(OPENSHIFT_MONITORING_NAMESPACE)
-                    .endSubject()
-                    .withNewRoleRef()
-                        .withKind("Role")
-                        .withName(ROLE_NAME)
-                    .endRoleRef()
-                    .build();
-            roleBinding = client.rbac().roleBindings().createOrReplace(roleBinding);
-
-            if (roleBinding.getMetadata().getResourceVersion() == null) {
-                // No exception, but RoleBinding not created properly
-                return;
-            }
-        } catch (Exception e) {
-            LOG.error("Failed to create RoleBinding", e);
-            return;
-        }
+    private Role desiredRole() {
+        return new RoleBuilder()
+                .withNewMetadata()
+                    .withName(ROLE_NAME)
+                .endMetadata()
+                .addNewRule()
+                    .addNewApiGroup("")
+                    .withResources("pods", "services", "endpoints")
+                    .withVerbs("get", "list", "watch")
+                .endRule()
+                .build();
+    }
 
-        try {
-            // Create Prometheus Rule
-            PrometheusRule promRule = new PrometheusRuleBuilder()
-                    .withNewMetadata()
-                        .withName(PROMETHEUS_RULES_NAME)
-                        .withNamespace(OPENSHIFT_MONITORING_NAMESPACE)
-                    .endMetadata()
-                    .withNewSpec()
-                        .addNewGroup()
-                            .withName("application-services.rules")
-                            .addNewRule()
-                                .withNewExpr("sum by (prod_name) (appsvcs_cpu_usage_cores)")
-                                .withRecord("appsvcs:cores_by_product:sum")
-                            .endRule()
-                        .endGroup()
-                    .endSpec()
-                    .build();
-            promRule = client.monitoring().prometheusRules().inNamespace(OPENSHIFT_MONITORING_NAMESPACE).createOrReplace(promRule);
-
-            if (promRule.getMetadata().getResourceVersion() == null) {
-                // No exception, but PrometheusRule not created properly
-                return;
-            }
-        } catch (Exception e) {
-            LOG.error("Failed to create PrometheusRule", e);
-            return;
-        }
+    private RoleBinding desiredRoleBinding() {
+        return new RoleBindingBuilder()
+                .withNewMetadata()
+                    .withName(ROLE_BINDING_NAME)
+                .endMetadata()
+                .addNewSubject()
+                    .withKind("ServiceAccount")
+                    .withName("prometheus-k8s")
+                    .withNamespace(OPENSHIFT_MONITORING_NAMESPACE)
+                .endSubject()
+                .withNewRoleRef()
+                    // Set explicitly, otherwise defaulted by the API server and seen as a change
+                    .withApiGroup("rbac.authorization.k8s.io")
+                    .withKind("Role")
+                    .withName(ROLE_NAME)
+                .endRoleRef()
+                .build();
+    }
 
-        try {
-            // Create ServiceMonitor
-            ServiceMonitor monitor = new ServiceMonitorBuilder()
-                    .withNewMetadata()
-                        .withName(SERVICE_MONITOR_NAME)
-                        .withNamespace(OPENSHIFT_MONITORING_NAMESPACE)
-                    .endMetadata()
-                    .withNewSpec()
-                        .addNewEndpoint()
-                            .withScheme("http")
-                            .withPort("http")
-                            .withPath("/q/metrics")
-                            .withInterval(config.scrapeInterval())
-                        .endEndpoint()
-                        .withNewNamespaceSelector()
-                            .withMatchNames(client.getNamespace())
-                        .endNamespaceSelector()
-                        .withNewSelector()
-                            .withMatchLabels(Map.of("app.kubernetes.io/name", applicationName))
-                        .endSelector()
-                    .endSpec()
-                    .build();
-            monitor = client.monitoring().serviceMonitors().inNamespace(OPENSHIFT_MONITORING_NAMESPACE).createOrReplace(monitor);
-
-            if (!monitor.getMetadata().getResourceVersion().isEmpty()) {
-                LOG.info("ServiceMonitor " + SERVICE_MONITOR_NAME + " installed.");
-            }
-        } catch (Exception e) {
-            LOG.error("Failed to create ServiceMonitor", e);
+    // Summed across Meters, which is only correct as Meters never meter the same namespaces
+    private PrometheusRule desiredPrometheusRule() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(new RuleBuilder()
+                .withNewExpr("sum by (prod_name) (appsvcs_cpu_usage_cores)")
+                .withRecord("appsvcs:cores_by_product:sum")
+                .build());
+        if (config.meter().memory().isPresent()) {
+            rules.add(new RuleBuilder()
+                    .withNewExpr("sum by (prod_name) (" + config.meter().memory().get() + ")")
+                    .withRecord("appsvcs:memory_bytes_by_product:sum")
+                    .build());
         }
+
+        return new PrometheusRuleBuilder()
+                .withNewMetadata()
+                    .withName(PROMETHEUS_RULES_NAME)
+                    .withNamespace(OPENSHIFT_MONITORING_NAMESPACE)
+                .endMetadata()
+                .withNewSpec()
+                    .addNewGroup()
+                        .withName("application-services.rules")
+                        .withRules(rules)
+                    .endGroup()
+                .endSpec()
+                .build();
+    }
+
+    private ServiceMonitor desiredServiceMonitor() {
+        return new ServiceMonitorBuilder()
+                .withNewMetadata()
+                    .withName(SERVICE_MONITOR_NAME)
+                    .withNamespace(OPENSHIFT_MONITORING_NAMESPACE)
+                .endMetadata()
+                .withNewSpec()
+                    .addNewEndpoint()
+                        .withScheme("http")
+                        .withPort("http")
+                        .withPath("/q/metrics")
+                        .withInterval(config.scrapeInterval())
+                    .endEndpoint()
+                    .withNewNamespaceSelector()
+                        .withMatchNames(client.getNamespace())
+                    .endNamespaceSelector()
+                    .withNewSelector()
+                        .withMatchLabels(Map.of("app.kubernetes.io/name", applicationName))
+                    .endSelector()
+                .endSpec()
+                .build();
     }
 
     // These are safe to execute even if all of them are not there
     void deleteServiceMonitor() {
-        // Delete ServiceMonitor
-        Resource<ServiceMonitor> serviceMonitorResource = serviceMonitor();
-        if (serviceMonitorResource.get() != null) {
-            serviceMonitorResource.delete();
+        if (serviceMonitorResource.delete()) {
             LOG.info("ServiceMonitor " + SERVICE_MONITOR_NAME + " un-installed.");
         }
 
-        // Delete PrometheusRule
-        Resource<PrometheusRule> prometheusRuleResource = client.monitoring().prometheusRules().withName(PROMETHEUS_RULES_NAME);
-        if (prometheusRuleResource.get() != null) {
-            prometheusRuleResource.delete();
+        prometheusRuleResource.delete();
+        roleBindingResource.delete();
+        roleResource.delete();
+    }
+
+    // Testing purposes only, the watcher of an unnamed Meter
+    synchronized PodWatcher getWatcher() {
+        return podWatchers.get("");
+    }
+
+    // Testing purposes only
+    synchronized boolean informersStarted() {
+        return roleResource.started() || roleBindingResource.started() || prometheusRuleResource.started()
+            || serviceMonitorResource.started();
+    }
+
+    private static String meterName(Meter resource) {
+        return resource.getMetadata() != null && resource.getMetadata().getName() != null
+            ? resource.getMetadata().getName()
+            : "";
+    }
+
+    // Without the label, a single Meter collects, and its metrics are the same as before Meters could be several
+    private Tags meterTags(String meterName) {
+        return config.meter().meterLabel().isPresent() && !meterName.isEmpty()
+            ? Tags.of(config.meter().meterLabel().get(), meterName)
+            : Tags.empty();
+    }
+
+    /**
+     * @return the name of another collecting Meter watching any of the namespaces of the spec, or any other collecting Meter
+     *         if their metrics can't be told apart, otherwise null
+     */
+    private String conflictingMeter(String meterName, MeterSpec spec) {
+        final Set<String> scopes = PodEventSource.watchScopes(spec.getWatchNamespaces());
+        for (Map.Entry<String, PodWatcher> entry : podWatchers.entrySet()) {
+            if (entry.getKey().equals(meterName)) {
+                continue;
+            }
+
+            final Set<String> otherScopes = PodEventSource.watchScopes(entry.getValue().watchNamespaces());
+            if (config.meter().meterLabel().isEmpty()
+                    || scopes.contains(PodEventSource.ALL_NAMESPACES) || otherScopes.contains(PodEventSource.ALL_NAMESPACES)
+                    || !Collections.disjoint(scopes, otherScopes)) {
+                return entry.getKey();
+            }
         }
+        return null;
+    }
 
-        // Delete RoleBinding
-        Resource<RoleBinding> roleBindingResource = client.rbac().roleBindings().withName(ROLE_BINDING_NAME);
-        if (roleBindingResource.get() != null) {
-            roleBindingResource.delete();
+    /**
+     * @return true if the Meter had a watcher
+     */
+    private boolean stopWatcher(String meterName) {
+        final PodWatcher podWatcher = podWatchers.remove(meterName);
+        if (podWatcher == null) {
+            return false;
         }
 
-        // Delete Role
-        Resource<Role> roleResource = client.rbac().roles().withName(ROLE_NAME);
-        if (roleResource.get() != null) {
-            roleResource.delete();
+        podWatcher.stop();
+        if (podWatchers.isEmpty()) {
+            // Close the pod watches until a Meter collects again
+            podEventSource.stop();
+            podEventSource = null;
         }
-    }
 
-    // Testing purposes only
-    PodWatcher getWatcher() {
-        return podWatcher;
+        // Nothing else may reconcile a refused Meter, even though it may now collect
+        refusedMeters.values().forEach(refused -> scheduleReconcile(refused, Duration.ZERO));
+        return true;
     }
 
-    private MeterStatus constructStatus() {
+    private MeterStatus constructStatus(Meter resource, String meterName) {
+        final MeterStatus currentStatus = resource.getStatus();
+        final PodWatcher podWatcher = podWatchers.get(meterName);
         final String currentlyWatching = podWatcher != null ? "TRUE" : "FALSE";
-        final String watchedPodCount = podWatcher != null ? podWatcher.watchedPods() : "UNKNOWN";
-        final Resource<ServiceMonitor> serviceMonitor = serviceMonitor();
-        final String serviceMonitorInstalled = serviceMonitor != null ? (serviceMonitor.get() != null ? "TRUE" : "FALSE") : "UNKNOWN";
+        String watchedPodCount = podWatcher != null ? podWatcher.watchedPods() : "UNKNOWN";
+        final Long lastWatchedPodsUpdate = lastWatchedPodsUpdates.get(meterName);
+        final long sinceLastUpdate = lastWatchedPodsUpdate != null ? System.nanoTime() - lastWatchedPodsUpdate : Long.MAX_VALUE;
+        if (currentStatus != null && podWatcher != null && currentlyWatching.equals(currentStatus.getCurrentlyWatching())
+                && sinceLastUpdate < config.statusUpdateInterval().toNanos()) {
+            // Keep the count last reported, until the interval has passed
+            if (!watchedPodCount.equals(currentStatus.getWatchedPods())) {
+                // No other event may come to write the count then
+                scheduleReconcile(resource, Duration.ofNanos(config.statusUpdateInterval().toNanos() - sinceLastUpdate));
+            }
+            watchedPodCount = currentStatus.getWatchedPods();
+        }
+        final String serviceMonitorInstalled = serviceMonitorResource.get() != null ? "TRUE" : "FALSE";
         return new MeterStatus(currentlyWatching, watchedPodCount, serviceMonitorInstalled);
     }
 
-    private Resource<ServiceMonitor> serviceMonitor() {
-        return client.monitoring().serviceMonitors().inNamespace(OPENSHIFT_MONITORING_NAMESPACE).withName(SERVICE_MONITOR_NAME);
+    private void scheduleReconcile(Meter resource, Duration delay) {
+        if (timerEventSource != null && resource.getMetadata().getUid() != null) {
+            // Rounded up, so the reconcile doesn't come before the delay has passed
+            timerEventSource.scheduleOnce(resource, delay.toMillis() + 1);
+        }
+    }
+
+    private void startInformers() {
+        roleResource.start();
+        roleBindingResource.start();
+        prometheusRuleResource.start();
+        serviceMonitorResource.start();
+    }
+
+    private void stopInformers() {
+        roleResource.stop();
+        roleBindingResource.stop();
+        prometheusRuleResource.stop();
+        serviceMonitorResource.stop();
     }
 }
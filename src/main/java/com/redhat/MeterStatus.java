@@ -1,5 +1,7 @@
 package com.redhat;
 
+import java.util.Objects;
+
 public class MeterStatus {
 
     private String currentlyWatching;
@@ -38,4 +40,23 @@ public class MeterStatus {
     public void setServiceMonitorInstalled(String serviceMonitorInstalled) {
         this.serviceMonitorInstalled = serviceMonitorInstalled;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MeterStatus that = (MeterStatus) o;
+        return Objects.equals(currentlyWatching, that.currentlyWatching)
+            && Objects.equals(watchedPodCount, that.watchedPodCount)
+            && Objects.equals(serviceMonitorInstalled, that.serviceMonitorInstalled);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(currentlyWatching, watchedPodCount, serviceMonitorInstalled);
+    }
 }
@@ -1,5 +1,6 @@
 package com.redhat;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +14,9 @@ public interface OperatorConfig {
 
     String scrapeInterval();
 
+    // Least time between Meter status updates made only to report a new watched pod count
+    Duration statusUpdateInterval();
+
     MeterConfig meter();
 
     PodConfig pod();
@@ -20,7 +24,24 @@ public interface OperatorConfig {
     interface MeterConfig {
         String cpu();
 
+        Optional<String> memory();
+
+        Optional<String> cpuSeconds();
+
         List<String> labels();
+
+        CollectionMode collectionMode();
+
+        // Most metrics requests made at the same time
+        int collectionConcurrency();
+
+        // Time allowed for the metrics requests of a sampling cycle, defaults to the scrape interval
+        Optional<Duration> collectionDeadline();
+
+        Duration emptyGroupGracePeriod();
+
+        // Label set to the name of the Meter on every metric, needed for several Meters to collect at the same time
+        Optional<String> meterLabel();
     }
 
     interface PodConfig {
@@ -33,5 +54,17 @@ public interface OperatorConfig {
         String componentTypeLabel();
 
         String componentTypeInfrastructure();
+
+        // Whether the API server is asked for only the pods of allowed products, rather than all identified pods, defaults to true
+        Optional<Boolean> selectProducts();
+    }
+
+    enum CollectionMode {
+        // One metrics call per pod
+        POD,
+        // One metrics call per namespace containing watched pods
+        NAMESPACE,
+        // One metrics call for the whole cluster
+        CLUSTER
     }
 }
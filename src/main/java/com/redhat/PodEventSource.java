@@ -0,0 +1,633 @@
+package com.redhat;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.logging.Logger;
+
+import com.redhat.PodWatcher.UsageMeasurer;
+import com.redhat.PodWatcher.PodGroup;
+
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.Watcher.Action;
+import io.fabric8.kubernetes.client.WatcherException;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import io.fabric8.kubernetes.client.internal.readiness.Readiness;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * The pod watches shared by every {@link PodWatcher}, so each Meter doesn't open watches of its own.
+ * Watches the namespaces of all registered watchers, keeps the state of the pods seen,
+ * and hands every change to each watcher, which decides from its own spec whether the pod is metered.
+ * The usage of the pods of all watchers is sampled in the same cycle.
+ */
+class PodEventSource {
+    private static final Logger LOG = Logger.getLogger(PodEventSource.class);
+
+    private static final long LIST_PAGE_SIZE = 500;
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS = 1_000;
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 60_000;
+    // Events for the same pod received within the window are applied once
+    private static final long EVENT_WINDOW_MILLIS = 100;
+    private static final int EVENT_QUEUE_CAPACITY = 10_000;
+    private static final int EVENT_BATCH_SIZE = 500;
+    static final String DROPPED_EVENTS_METER = "appsvcs_operator_pod_events_dropped";
+    static final String COALESCED_EVENTS_METER = "appsvcs_operator_pod_events_coalesced";
+    static final String EVENT_QUEUE_DEPTH_METER = "appsvcs_operator_pod_event_queue_depth";
+    // Scope of the watch across all namespaces, matching the "" entry of MeterSpec.watchNamespaces
+    static final String ALL_NAMESPACES = "";
+
+    private final KubernetesClient client;
+    private final MeterRegistry meterRegistry;
+    private final PodInclusionMatcher matcher;
+    // Identifier label values of allowed products, sorted so every request carries the same selector,
+    // empty when only the identifier label is selected
+    private final String[] selectedLabelValues;
+    private final TagResolver tagResolver;
+    private final boolean evictEmptyGroups;
+    // Watchers receiving the pod changes, read by the UsageSampler without locking
+    private final List<PodWatcher> podWatchers = new CopyOnWriteArrayList<>();
+    // Pods, keyed by namespace and name, whose PodRecord is "ready", for the UsageSampler to read without locking
+    private final Set<String> readyPods = ConcurrentHashMap.newKeySet();
+    // Every pod of an allowed product, whether metered or not, keyed by namespace and name
+    private final Map<String, PodRecord> knownPods = new HashMap<>();
+    // Key - Namespace watched, or ALL_NAMESPACES, Value - Watcher for the namespace
+    private final Map<String, ScopeWatcher> watchers = new HashMap<>();
+    // Events from the watches, waiting to be applied by the scheduler thread, keyed by pod UID
+    private final CoalescingQueue<String, PodEvent> events = new CoalescingQueue<>(EVENT_QUEUE_CAPACITY);
+    // Meters of the event queue, registered while started
+    private final List<Meter> eventQueueMeters = new ArrayList<>();
+    private boolean started;
+
+    private final UsageSampler sampler;
+    // Applies watch events, and evicts empty groups
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pod-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Reconnects watches, and lists pods again after the event queue overflowed,
+    // so events keep being applied however long the pods take to list
+    private final ScheduledExecutorService syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pod-watch-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Set while a resync is waiting to run, so overflows meanwhile don't queue another
+    private final AtomicBoolean resyncPending = new AtomicBoolean();
+
+    PodEventSource(KubernetesClient client, MeterRegistry meterRegistry, OperatorConfig config) {
+        this.client = client;
+        this.meterRegistry = meterRegistry;
+        this.matcher = new PodInclusionMatcher(config, PodWatcher.convertListToMap(config.productNameMapping()));
+        this.selectedLabelValues = config.pod().selectProducts().orElse(true)
+            ? new TreeSet<>(matcher.allowedLabelValues()).toArray(new String[0])
+            : new String[0];
+        this.tagResolver = new TagResolver(config, matcher::productName, TagResolver.DEFAULT_MAX_CACHED);
+        this.evictEmptyGroups = config.meter().emptyGroupGracePeriod() != null && !config.meter().emptyGroupGracePeriod().isZero();
+
+        final Duration interval = UsageSampler.parseDuration(config.scrapeInterval());
+        final PodMetricsCollector collector = new PodMetricsCollector(client, meterRegistry, config.meter().collectionMode(),
+            config.meter().collectionConcurrency(), config.meter().collectionDeadline().orElse(interval), interval);
+        sampler = new UsageSampler(this::groups, readyPods, collector, UsageMeasurer.cpu(),
+            config.meter().memory().isPresent() ? UsageMeasurer.memory() : null, interval);
+    }
+
+    /**
+     * Start watching the namespaces of the registered watchers, and sampling the usage of their pods.
+     * Once started, watches follow the namespaces of watchers as they register, or change their spec.
+     * Like every method opening watches, it must not be called with the lock held, as the pods are listed first.
+     */
+    void start() {
+        synchronized (this) {
+            if (!started) {
+                started = true;
+                registerEventQueueMeters();
+                sampler.start();
+                scheduler.scheduleWithFixedDelay(this::applyEvents, EVENT_WINDOW_MILLIS, EVENT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (evictEmptyGroups) {
+                    scheduler.scheduleAtFixedRate(this::evictExpiredGroups, PodWatcher.EVICTION_TICK_MILLIS, PodWatcher.EVICTION_TICK_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        updateWatches();
+    }
+
+    /**
+     * Close all watches, and forget every pod. Watchers still registered keep their meters, until stopped themselves.
+     */
+    synchronized void stop() {
+        for (ScopeWatcher watcher : watchers.values()) {
+            watcher.close();
+        }
+        watchers.clear();
+        scheduler.shutdownNow();
+        syncScheduler.shutdownNow();
+        events.clear();
+        for (Meter meter : eventQueueMeters) {
+            meterRegistry.remove(meter);
+        }
+        eventQueueMeters.clear();
+
+        sampler.stop();
+        knownPods.clear();
+        readyPods.clear();
+    }
+
+    private void registerEventQueueMeters() {
+        eventQueueMeters.add(FunctionCounter.builder(DROPPED_EVENTS_METER, events, CoalescingQueue::dropped)
+            .description("Pod watch events dropped as the event queue was full")
+            .register(meterRegistry));
+        eventQueueMeters.add(FunctionCounter.builder(COALESCED_EVENTS_METER, events, CoalescingQueue::coalesced)
+            .description("Pod watch events replaced by a later event for the same pod before being applied")
+            .register(meterRegistry));
+        eventQueueMeters.add(Gauge.builder(EVENT_QUEUE_DEPTH_METER, events, CoalescingQueue::size)
+            .description("Pod watch events waiting to be applied")
+            .register(meterRegistry));
+    }
+
+    /**
+     * Add a watcher, handing it the pods already known.
+     */
+    void register(PodWatcher podWatcher) {
+        synchronized (this) {
+            podWatchers.add(podWatcher);
+            for (PodRecord record : knownPods.values()) {
+                podWatcher.podUpdated(null, record);
+            }
+        }
+
+        updateWatches();
+    }
+
+    /**
+     * Remove a watcher, closing the watches of namespaces no other watcher needs.
+     */
+    void unregister(PodWatcher podWatcher) {
+        podWatchers.remove(podWatcher);
+
+        updateWatches();
+    }
+
+    synchronized int watcherCount() {
+        return podWatchers.size();
+    }
+
+    // Called when the namespaces of a watcher change, without the lock held.
+    // Pods of newly watched namespaces are added by their initial list
+    void watchNamespacesChanged() {
+        updateWatches();
+    }
+
+    public synchronized void eventReceived(Action action, Pod resource) {
+        final String key = PodMetricsCollector.key(resource.getMetadata().getNamespace(), resource.getMetadata().getName());
+
+        if (!hasIdentifier(resource)) {
+            // The identifier label may have been removed from a known pod
+            final PodRecord removed = knownPods.get(key);
+            if (removed != null) {
+                forget(key, removed);
+            }
+            return;
+        }
+
+        switch (action) {
+            case ADDED:
+            case MODIFIED:
+                update(key, new PodRecord(resource, tagResolver.resolve(resource.getMetadata().getLabels())));
+                break;
+            case DELETED:
+                final PodRecord removed = knownPods.get(key);
+                forget(key, removed != null ? removed : new PodRecord(resource, tagResolver.resolve(resource.getMetadata().getLabels())));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void update(String key, PodRecord record) {
+        final PodRecord previous = knownPods.put(key, record);
+
+        if (record.ready) {
+            readyPods.add(key);
+        } else {
+            readyPods.remove(key);
+        }
+
+        for (PodWatcher podWatcher : podWatchers) {
+            podWatcher.podUpdated(previous, record);
+        }
+    }
+
+    private void forget(String key, PodRecord record) {
+        readyPods.remove(key);
+        knownPods.remove(key);
+
+        for (PodWatcher podWatcher : podWatchers) {
+            podWatcher.podForgotten(record);
+        }
+    }
+
+    // Apply the queued watch events in batches, so the watch threads never wait for the lock
+    private void applyEvents() {
+        try {
+            final List<PodEvent> pending = events.drain();
+            for (int start = 0; start < pending.size(); start += EVENT_BATCH_SIZE) {
+                synchronized (this) {
+                    for (PodEvent event : pending.subList(start, Math.min(start + EVENT_BATCH_SIZE, pending.size()))) {
+                        if (!event.source.closed) {
+                            eventReceived(event.action, event.pod);
+                        }
+                    }
+                }
+            }
+
+            if (events.resetOverflowed() && resyncPending.compareAndSet(false, true)) {
+                syncScheduler.execute(this::resyncAfterOverflow);
+            }
+        } catch (RuntimeException e) {
+            // Don't let the exception cancel further event processing
+            LOG.error("Failed to apply pod events", e);
+        }
+    }
+
+    // Dropped events leave the known pods out of date, so list every watched namespace again
+    private void resyncAfterOverflow() {
+        // Events dropped from now on are only seen by another resync
+        resyncPending.set(false);
+        LOG.warn("Pod event queue full, " + events.dropped() + " events dropped in total, listing pods again");
+        final List<ScopeWatcher> resynced;
+        synchronized (this) {
+            resynced = new ArrayList<>(watchers.values());
+        }
+
+        for (ScopeWatcher watcher : resynced) {
+            try {
+                sync(watcher);
+            } catch (KubernetesClientException kce) {
+                LOG.warn("Failed to list pods of " + watcher.describeScope() + " again", kce);
+            }
+        }
+    }
+
+    // Each watcher has an eviction wheel of its own, advanced together once a tick
+    private synchronized void evictExpiredGroups() {
+        for (PodWatcher podWatcher : podWatchers) {
+            podWatcher.evictExpiredGroups();
+        }
+    }
+
+    // Groups of every watcher, a pod in the groups of several watchers is only measured once
+    private Collection<PodGroup> groups() {
+        final List<PodGroup> groups = new ArrayList<>();
+        for (PodWatcher podWatcher : podWatchers) {
+            groups.addAll(podWatcher.groups());
+        }
+        return groups;
+    }
+
+    // One watch per namespace when the spec lists them, so events from other namespaces are never sent
+    static Set<String> watchScopes(Set<String> watchNamespaces) {
+        if (watchNamespaces.isEmpty() || watchNamespaces.contains(ALL_NAMESPACES)) {
+            return Collections.singleton(ALL_NAMESPACES);
+        }
+
+        return watchNamespaces;
+    }
+
+    // The scopes needed by all watchers, a single watch of all namespaces if any watcher needs it
+    private Set<String> watchScopes() {
+        final Set<String> scopes = new HashSet<>();
+        for (PodWatcher podWatcher : podWatchers) {
+            final Set<String> watcherScopes = watchScopes(podWatcher.watchNamespaces());
+            if (watcherScopes.contains(ALL_NAMESPACES)) {
+                return watcherScopes;
+            }
+            scopes.addAll(watcherScopes);
+        }
+        return scopes;
+    }
+
+    // Close the watches of namespaces no longer needed, and open those newly added, once started
+    private void updateWatches() {
+        final List<ScopeWatcher> added = new ArrayList<>();
+
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+
+            final Set<String> scopes = watchScopes();
+
+            final Iterator<Entry<String, ScopeWatcher>> iterator = watchers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Entry<String, ScopeWatcher> entry = iterator.next();
+                if (!scopes.contains(entry.getKey())) {
+                    entry.getValue().close();
+                    iterator.remove();
+                }
+            }
+
+            // Pods of closed watches would never receive further events
+            for (Entry<String, PodRecord> entry : new ArrayList<>(knownPods.entrySet())) {
+                if (!isWatched(entry.getValue().namespace)) {
+                    forget(entry.getKey(), entry.getValue());
+                }
+            }
+
+            for (String scope : scopes) {
+                if (!watchers.containsKey(scope)) {
+                    final ScopeWatcher watcher = new ScopeWatcher(scope);
+                    watchers.put(scope, watcher);
+                    added.add(watcher);
+                }
+            }
+        }
+
+        // Listed without the lock, so the events of other watches keep being applied meanwhile
+        for (ScopeWatcher watcher : added) {
+            try {
+                watcher.connect(true);
+            } catch (KubernetesClientException kce) {
+                watcher.connectFailed(true, kce);
+            }
+        }
+    }
+
+    private boolean isWatched(String namespace) {
+        for (PodWatcher podWatcher : podWatchers) {
+            if (podWatcher.shouldWatch(podWatcher.watchNamespaces(), namespace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Synchronise the known pods with a list of the scope of a watch. The list is read in pages,
+     * each processed as it arrives, so memory use doesn't grow with the size of the cluster.
+     * Only the pages are applied with the lock held, not their requests, and none once the watch is closed.
+     *
+     * @return the resourceVersion of the list, from which to start watching
+     */
+    private String sync(ScopeWatcher watcher) {
+        final String scope = watcher.scope;
+        final Set<String> listedPods = new HashSet<>();
+        String resourceVersion = null;
+        String continueToken = null;
+
+        do {
+            final PodList page = selectedPods(scope).list(new ListOptionsBuilder()
+                .withLimit(LIST_PAGE_SIZE)
+                .withContinue(continueToken)
+                .build());
+
+            synchronized (this) {
+                if (watcher.closed) {
+                    return null;
+                }
+
+                for (Pod pod : page.getItems()) {
+                    if (hasIdentifier(pod)) {
+                        listedPods.add(PodMetricsCollector.key(pod.getMetadata().getNamespace(), pod.getMetadata().getName()));
+                        eventReceived(Action.ADDED, pod);
+                    }
+                }
+            }
+
+            resourceVersion = page.getMetadata().getResourceVersion();
+            continueToken = page.getMetadata().getContinue();
+        } while (continueToken != null && !continueToken.isEmpty());
+
+        synchronized (this) {
+            if (watcher.closed) {
+                return null;
+            }
+
+            // Pods removed while not watching
+            for (Entry<String, PodRecord> entry : new ArrayList<>(knownPods.entrySet())) {
+                if ((ALL_NAMESPACES.equals(scope) || scope.equals(entry.getValue().namespace))
+                        && !listedPods.contains(entry.getKey())) {
+                    forget(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return resourceVersion;
+    }
+
+    // Let the API server drop pods of other products, rather than deserializing and discarding them.
+    // A pod relabelled into an allowed product is then ADDED, and one relabelled out of them DELETED
+    private FilterWatchListDeletable<Pod, PodList> selectedPods(String scope) {
+        final FilterWatchListDeletable<Pod, PodList> pods = ALL_NAMESPACES.equals(scope)
+            ? client.pods().inAnyNamespace()
+            : client.pods().inNamespace(scope);
+
+        // An empty set isn't a valid selector either
+        return selectedLabelValues.length > 0
+            ? pods.withLabelIn(matcher.identifierLabel(), selectedLabelValues)
+            : pods.withLabel(matcher.identifierLabel());
+    }
+
+    private boolean hasIdentifier(Pod pod) {
+        return matcher.hasIdentifier(pod.getMetadata().getLabels());
+    }
+
+    boolean includes(Map<String, String> podLabels, boolean includeInfrastructure) {
+        return matcher.includes(podLabels, includeInfrastructure);
+    }
+
+    // Called with the lock held
+    Collection<PodRecord> knownPods() {
+        return knownPods.values();
+    }
+
+    synchronized int knownPodCount() {
+        return knownPods.size();
+    }
+
+    UsageSampler sampler() {
+        return sampler;
+    }
+
+    // Doubles from the initial delay with each failed attempt, up to the maximum
+    static long reconnectDelayMillis(int attempts) {
+        return Math.min(RECONNECT_INITIAL_DELAY_MILLIS << Math.min(attempts, 16), RECONNECT_MAX_DELAY_MILLIS);
+    }
+
+    // Testing purposes only
+    void failWatch(String scope, WatcherException cause) {
+        final ScopeWatcher watcher;
+        synchronized (this) {
+            watcher = watchers.get(scope);
+            watcher.watch.close();
+        }
+        watcher.onClose(cause);
+    }
+
+    // Forwards the events of a single watch, until the watch is closed.
+    // The watch is reopened if it fails, without touching the groups or their meters.
+    private class ScopeWatcher implements Watcher<Pod> {
+        private final String scope;
+        private Watch watch;
+        // Only set with the PodEventSource lock held, read by the watch thread without it
+        private volatile boolean closed;
+        // Last resourceVersion seen, from which a failed watch resumes
+        private volatile String resourceVersion;
+        private int reconnectAttempts;
+
+        ScopeWatcher(String scope) {
+            this.scope = scope;
+        }
+
+        // Called without the PodEventSource lock held, as the pods may be listed first
+        void connect(boolean relist) {
+            // Events since the last resourceVersion may no longer be available, so list the pods again
+            final String fromResourceVersion = relist || resourceVersion == null ? sync(this) : resourceVersion;
+
+            synchronized (PodEventSource.this) {
+                if (!closed) {
+                    resourceVersion = fromResourceVersion;
+                    watch = selectedPods(scope).watch(new ListOptionsBuilder()
+                        .withResourceVersion(fromResourceVersion)
+                        .build(), this);
+                }
+            }
+        }
+
+        void connectFailed(boolean relist, KubernetesClientException kce) {
+            synchronized (PodEventSource.this) {
+                if (!closed) {
+                    LOG.warn("Failed to connect pod watch of " + describeScope() + ", retrying", kce);
+                    scheduleReconnect(relist || kce.getCode() == HttpURLConnection.HTTP_GONE);
+                }
+            }
+        }
+
+        @Override
+        public void eventReceived(Action action, Pod resource) {
+            if (!closed) {
+                resourceVersion = resource.getMetadata().getResourceVersion();
+                final String uid = resource.getMetadata().getUid();
+                events.offer(uid != null ? uid : PodMetricsCollector.key(resource.getMetadata().getNamespace(), resource.getMetadata().getName()),
+                    new PodEvent(action, resource, this));
+            }
+        }
+
+        // Called with the PodEventSource lock held, so no further events are applied once closed
+        void close() {
+            closed = true;
+            if (watch != null) {
+                watch.close();
+            }
+        }
+
+        @Override
+        public void onClose() {
+            // Closed by PodEventSource
+        }
+
+        @Override
+        public void onClose(WatcherException cause) {
+            synchronized (PodEventSource.this) {
+                if (!closed) {
+                    LOG.warn("Pod watch of " + describeScope() + " closed, reconnecting", cause);
+                    scheduleReconnect(cause.isHttpGone());
+                }
+            }
+        }
+
+        // Called with the PodEventSource lock held
+        private void scheduleReconnect(boolean relist) {
+            final long delay = reconnectDelayMillis(reconnectAttempts);
+            reconnectAttempts++;
+            syncScheduler.schedule(() -> reconnect(relist), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void reconnect(boolean relist) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                connect(relist);
+            } catch (KubernetesClientException kce) {
+                connectFailed(relist, kce);
+                return;
+            }
+
+            synchronized (PodEventSource.this) {
+                if (!closed) {
+                    reconnectAttempts = 0;
+                    LOG.info("Pod watch of " + describeScope() + " reconnected");
+                }
+            }
+        }
+
+        private String describeScope() {
+            return ALL_NAMESPACES.equals(scope) ? "all namespaces" : "namespace " + scope;
+        }
+    }
+
+    private static class PodEvent {
+        private final Action action;
+        private final Pod pod;
+        private final ScopeWatcher source;
+
+        PodEvent(Action action, Pod pod, ScopeWatcher source) {
+            this.action = action;
+            this.pod = pod;
+            this.source = source;
+        }
+    }
+
+    // The state of a pod as of its last event
+    static class PodRecord {
+        final String name;
+        final String namespace;
+        final Map<String, String> labels;
+        // Tags from the pod labels, without those of the watchers
+        final Tags tags;
+        final boolean ready;
+        final String node;
+
+        PodRecord(Pod pod, Tags tags) {
+            this.name = pod.getMetadata().getName();
+            this.namespace = pod.getMetadata().getNamespace();
+            this.labels = pod.getMetadata().getLabels();
+            this.tags = tags;
+            this.ready = Readiness.isPodReady(pod);
+            this.node = pod.getSpec() != null ? pod.getSpec().getNodeName() : null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.redhat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rules deciding which pods are metered, read once from {@link OperatorConfig}
+ * so matching a pod doesn't go through the config on every event.
+ */
+final class PodInclusionMatcher {
+    private final String identifierLabel;
+    private final String componentTypeLabel;
+    private final String componentTypeInfrastructure;
+    private final Map<String, String> productNameMapping;
+    // Identifier label values whose product name, after mapping, is allowed
+    private final Set<String> allowedLabelValues;
+
+    PodInclusionMatcher(OperatorConfig config, Map<String, String> productNameMapping) {
+        this.identifierLabel = config.pod().identifier();
+        this.componentTypeLabel = config.pod().componentTypeLabel();
+        this.componentTypeInfrastructure = config.pod().componentTypeInfrastructure();
+        this.productNameMapping = Collections.unmodifiableMap(new HashMap<>(productNameMapping));
+
+        final Set<String> allowedProductNames = config.allowedProductNames() != null
+            ? new HashSet<>(config.allowedProductNames())
+            : Collections.emptySet();
+        final Set<String> labelValues = new HashSet<>();
+        for (String productName : allowedProductNames) {
+            if (!productNameMapping.containsKey(productName)) {
+                labelValues.add(productName);
+            }
+        }
+        for (Map.Entry<String, String> mapping : productNameMapping.entrySet()) {
+            if (allowedProductNames.contains(mapping.getValue())) {
+                labelValues.add(mapping.getKey());
+            }
+        }
+        this.allowedLabelValues = Collections.unmodifiableSet(labelValues);
+    }
+
+    String identifierLabel() {
+        return identifierLabel;
+    }
+
+    Set<String> allowedLabelValues() {
+        return allowedLabelValues;
+    }
+
+    boolean hasIdentifier(Map<String, String> podLabels) {
+        return podLabels != null && podLabels.containsKey(identifierLabel);
+    }
+
+    boolean isInfrastructure(Map<String, String> podLabels) {
+        return componentTypeInfrastructure.equals(podLabels.get(componentTypeLabel));
+    }
+
+    boolean includes(Map<String, String> podLabels, boolean includeInfrastructure) {
+        if (!includeInfrastructure && isInfrastructure(podLabels)) {
+            return false;
+        }
+
+        return allowedLabelValues.contains(podLabels.get(identifierLabel));
+    }
+
+    // Should be a "hack" that can be removed when we're communicating with our own Tenant for metrics collection
+    String productName(String labelValue) {
+        final String productName = productNameMapping.get(labelValue);
+        return productName != null ? productName : labelValue;
+    }
+}
@@ -0,0 +1,386 @@
+package com.redhat;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.logging.Logger;
+
+import com.redhat.OperatorConfig.CollectionMode;
+
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetrics;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+class PodMetricsCollector {
+    private static final Logger LOG = Logger.getLogger(PodMetricsCollector.class);
+
+    static final String CACHE_HITS_METER = "appsvcs_operator_usage_cache_hits";
+    static final String CACHE_MISSES_METER = "appsvcs_operator_usage_cache_misses";
+
+    // Windows after it expired that a reading may still stand in for the pod's failed requests,
+    // after which its usage is no longer reported, rather than repeated and billed for the whole outage
+    private static final int FALLBACK_WINDOWS = 2;
+
+    private final KubernetesClient client;
+    private final MeterRegistry meterRegistry;
+    private final CollectionMode mode;
+    private final int concurrency;
+    private final Duration deadline;
+    // How long a reading is used for when metrics-server doesn't report its window
+    private final Duration defaultTtl;
+
+    // Fetches the metrics of independent namespaces, or pods, at the same time
+    private ExecutorService executor;
+
+    // Key - Pod key, Value - Last reading of the pod, only used by the UsageSampler thread
+    private final Map<String, CachedUsage> cache = new HashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    // Only registered once pods are measured
+    private FunctionCounter cacheHitsCounter;
+    private FunctionCounter cacheMissesCounter;
+
+    public PodMetricsCollector(KubernetesClient client, MeterRegistry meterRegistry, CollectionMode mode,
+            int concurrency, Duration deadline, Duration defaultTtl) {
+        this.client = client;
+        this.meterRegistry = meterRegistry;
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.deadline = deadline;
+        this.defaultTtl = defaultTtl;
+    }
+
+    static String key(String namespace, String podName) {
+        return namespace + "/" + podName;
+    }
+
+    synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "metrics-collector-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        if (cacheHitsCounter != null) {
+            meterRegistry.remove(cacheHitsCounter);
+            meterRegistry.remove(cacheMissesCounter);
+            cacheHitsCounter = null;
+            cacheMissesCounter = null;
+        }
+    }
+
+    /**
+     * Retrieve the metrics of the requested pods, keyed by {@link #key(String, String)}.
+     * Readings still within their metrics-server window are reused, rather than requested again,
+     * as metrics-server won't have a newer one.
+     * Pods whose request failed, or didn't complete before the deadline, keep their last reading for {@link #FALLBACK_WINDOWS}
+     * more windows, so their usage isn't reported as zero. Pods without metrics available, without any reading yet,
+     * or whose last reading is older than that, are absent from the result.
+     *
+     * @param pods Key - {@link #key(String, String)} of the pod, Value - Pod namespace
+     */
+    Map<String, PodMetrics> collect(Map<String, String> pods) {
+        cache.keySet().retainAll(pods.keySet());
+        if (pods.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        registerCacheCounters();
+
+        final Instant now = Instant.now();
+        final Map<String, PodMetrics> result = new HashMap<>();
+        final Map<String, String> stalePods = new HashMap<>();
+        for (Map.Entry<String, String> entry : pods.entrySet()) {
+            final CachedUsage cached = cache.get(entry.getKey());
+            if (cached != null && now.isBefore(cached.expires)) {
+                result.put(entry.getKey(), cached.metrics);
+            } else {
+                stalePods.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // Readings of pods sharing a request with a stale one are requested again, so aren't reused
+        final int requested = requestedPodCount(pods, stalePods);
+        cacheHits.addAndGet(pods.size() - requested);
+        cacheMisses.addAndGet(requested);
+
+        if (!stalePods.isEmpty()) {
+            final Set<String> failedPods = new HashSet<>();
+            final Map<String, PodMetrics> fetched = fetchAll(pods, stalePods, failedPods);
+            for (Map.Entry<String, PodMetrics> entry : fetched.entrySet()) {
+                cache.put(entry.getKey(), new CachedUsage(entry.getValue(), timestamp(entry.getValue(), now), window(entry.getValue())));
+            }
+            result.putAll(fetched);
+
+            int dropped = 0;
+            for (String key : failedPods) {
+                final CachedUsage cached = cache.get(key);
+                if (cached == null || result.containsKey(key)) {
+                    continue;
+                }
+
+                if (now.isBefore(cached.fallbackUntil)) {
+                    result.put(key, cached.metrics);
+                } else {
+                    cache.remove(key);
+                    dropped++;
+                }
+            }
+
+            if (dropped > 0) {
+                LOG.warn("No usage reported for " + dropped + " pods, their metrics requests failing for "
+                    + FALLBACK_WINDOWS + " windows after their last reading expired");
+            }
+        }
+
+        return result;
+    }
+
+    // When metrics-server took the reading, or when it was fetched if not reported
+    private static Instant timestamp(PodMetrics metrics, Instant fetched) {
+        if (metrics.getTimestamp() != null) {
+            try {
+                return Instant.parse(metrics.getTimestamp());
+            } catch (DateTimeParseException e) {
+                LOG.debug(e);
+            }
+        }
+        return fetched;
+    }
+
+    private Duration window(PodMetrics metrics) {
+        if (metrics.getWindow() != null && metrics.getWindow().getDuration() != null
+                && !metrics.getWindow().getDuration().isNegative() && !metrics.getWindow().getDuration().isZero()) {
+            return metrics.getWindow().getDuration();
+        }
+        return defaultTtl;
+    }
+
+    // The number of requested pods whose readings are returned by the requests for the stale ones
+    private int requestedPodCount(Map<String, String> pods, Map<String, String> stalePods) {
+        switch (mode) {
+            case POD:
+                return stalePods.size();
+            case CLUSTER:
+                return stalePods.isEmpty() ? 0 : pods.size();
+            case NAMESPACE:
+            default:
+                final Set<String> namespaces = new HashSet<>(stalePods.values());
+                return (int) pods.values().stream().filter(namespaces::contains).count();
+        }
+    }
+
+    /**
+     * Namespace, and cluster, requests also refresh the readings of requested pods that weren't stale.
+     *
+     * @param failedPods Filled with the requested pods whose request failed, or was cancelled at the deadline
+     */
+    private Map<String, PodMetrics> fetchAll(Map<String, String> pods, Map<String, String> stalePods, Set<String> failedPods) {
+        final List<Fetch> fetches = new ArrayList<>();
+        switch (mode) {
+            case POD:
+                for (Map.Entry<String, String> entry : stalePods.entrySet()) {
+                    fetches.add(new Fetch(Set.of(entry.getKey()), () -> fetchPod(entry.getKey(), entry.getValue())));
+                }
+                break;
+            case CLUSTER:
+                fetches.add(new Fetch(pods.keySet(), () -> filter(pods, fetch(null))));
+                break;
+            case NAMESPACE:
+            default:
+                final Set<String> namespaces = new HashSet<>(stalePods.values());
+                for (String namespace : namespaces) {
+                    final Set<String> namespacePods = new HashSet<>();
+                    for (Map.Entry<String, String> entry : pods.entrySet()) {
+                        if (namespace.equals(entry.getValue())) {
+                            namespacePods.add(entry.getKey());
+                        }
+                    }
+                    fetches.add(new Fetch(namespacePods, () -> filter(pods, fetch(namespace))));
+                }
+                break;
+        }
+
+        return runAll(fetches, failedPods);
+    }
+
+    private Map<String, PodMetrics> runAll(List<Fetch> fetches, Set<String> failedPods) {
+        final ExecutorService fetchExecutor;
+        synchronized (this) {
+            fetchExecutor = executor;
+        }
+
+        final Map<String, PodMetrics> result = new HashMap<>();
+        if (fetchExecutor == null) {
+            // Not started, fetch on the calling thread
+            for (Fetch fetch : fetches) {
+                final Map<String, PodMetrics> fetched = complete(fetch.call);
+                if (fetched != null) {
+                    result.putAll(fetched);
+                } else {
+                    failedPods.addAll(fetch.pods);
+                }
+            }
+            return result;
+        }
+
+        final List<Callable<Map<String, PodMetrics>>> calls = new ArrayList<>();
+        for (Fetch fetch : fetches) {
+            calls.add(fetch.call);
+        }
+
+        final List<Future<Map<String, PodMetrics>>> futures;
+        try {
+            // Fetches still running at the deadline are cancelled
+            futures = fetchExecutor.invokeAll(calls, deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+        }
+
+        int missed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            final Future<Map<String, PodMetrics>> future = futures.get(i);
+            final Map<String, PodMetrics> fetched = future.isCancelled() ? null : complete(future::get);
+            if (fetched != null) {
+                result.putAll(fetched);
+            } else {
+                failedPods.addAll(fetches.get(i).pods);
+                if (future.isCancelled()) {
+                    missed++;
+                }
+            }
+        }
+
+        if (missed > 0) {
+            LOG.warn(missed + " of " + fetches.size() + " metrics requests didn't complete within " + deadline
+                + ", using the last usage of their pods");
+        }
+
+        return result;
+    }
+
+    private void registerCacheCounters() {
+        if (cacheHitsCounter == null && meterRegistry != null) {
+            cacheHitsCounter = FunctionCounter.builder(CACHE_HITS_METER, cacheHits, AtomicLong::get)
+                .description("Pod usage readings reused, as still within their metrics-server window")
+                .register(meterRegistry);
+            cacheMissesCounter = FunctionCounter.builder(CACHE_MISSES_METER, cacheMisses, AtomicLong::get)
+                .description("Pod usage readings requested from metrics-server")
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return the metrics of the fetch, or null if it failed
+     */
+    private static Map<String, PodMetrics> complete(Callable<Map<String, PodMetrics>> fetch) {
+        try {
+            return fetch.call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.debug(e.getCause());
+        } catch (Exception e) {
+            LOG.debug(e);
+        }
+        return null;
+    }
+
+    private Map<String, PodMetrics> fetchPod(String key, String namespace) {
+        final String podName = key.substring(namespace.length() + 1);
+        try {
+            return Map.of(key, client.top().pods().metrics(namespace, podName));
+        } catch (KubernetesClientException kce) {
+            if (kce.getCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw kce;
+            }
+            // A pod is "ready", but no metrics available yet
+            return Collections.emptyMap();
+        }
+    }
+
+    private Map<String, PodMetrics> filter(Map<String, String> pods, Collection<PodMetrics> metricsList) {
+        final Map<String, PodMetrics> result = new HashMap<>();
+
+        for (PodMetrics metrics : metricsList) {
+            final String key = key(metrics.getMetadata().getNamespace(), metrics.getMetadata().getName());
+            if (pods.containsKey(key)) {
+                result.put(key, metrics);
+            }
+        }
+
+        return result;
+    }
+
+    // A null namespace fetches the metrics of every pod in the cluster
+    private List<PodMetrics> fetch(String namespace) {
+        try {
+            return namespace == null
+                ? client.top().pods().metrics().getItems()
+                : client.top().pods().metrics(namespace).getItems();
+        } catch (KubernetesClientException kce) {
+            if (kce.getCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw kce;
+            }
+            // No metrics available yet for the namespace
+            return Collections.emptyList();
+        }
+    }
+
+    // A request for the metrics of some of the requested pods
+    private static class Fetch {
+        private final Collection<String> pods;
+        private final Callable<Map<String, PodMetrics>> call;
+
+        Fetch(Collection<String> pods, Callable<Map<String, PodMetrics>> call) {
+            this.pods = pods;
+            this.call = call;
+        }
+    }
+
+    private static class CachedUsage {
+        private final PodMetrics metrics;
+        private final Instant expires;
+        private final Instant fallbackUntil;
+
+        // metrics-server only has a newer reading once the window after the last one has passed,
+        // however long after that reading it was fetched
+        CachedUsage(PodMetrics metrics, Instant timestamp, Duration window) {
+            this.metrics = metrics;
+            this.expires = timestamp.plus(window);
+            this.fallbackUntil = expires.plus(window.multipliedBy(FALLBACK_WINDOWS));
+        }
+    }
+}
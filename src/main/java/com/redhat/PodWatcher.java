@@ -1,50 +1,114 @@
 package com.redhat;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.ToDoubleFunction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 import org.jboss.logging.Logger;
 
+import com.redhat.PodEventSource.PodRecord;
+
 import io.fabric8.kubernetes.api.model.Pod;
-import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.api.model.Quantity;
 import io.fabric8.kubernetes.api.model.metrics.v1beta1.ContainerMetrics;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetrics;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.KubernetesClientException;
-import io.fabric8.kubernetes.client.Watcher;
-import io.fabric8.kubernetes.client.WatcherException;
+import io.fabric8.kubernetes.client.Watcher.Action;
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
 
-class PodWatcher implements Watcher<Pod> {
+/**
+ * The pods metered for a single Meter, grouped by their tags, from the pod changes of a {@link PodEventSource}.
+ * Its meters carry the tags of the Meter, so those of several Meters sharing a source don't collide.
+ */
+class PodWatcher {
     private static final Logger LOG = Logger.getLogger(PodWatcher.class);
 
-    private final KubernetesClient client;
+    // Tick of each watcher's eviction wheel, and the rate PodEventSource advances the wheels at
+    static final long EVICTION_TICK_MILLIS = 1_000;
+    private static final int EVICTION_WHEEL_SLOTS = 64;
+
+    private final PodEventSource source;
+    // Only stopped with this watcher when not shared with other watchers
+    private final boolean ownsSource;
     private final MeterRegistry meterRegistry;
     private final OperatorConfig config;
+    // Tags identifying the Meter, added to those of every group
+    private final Tags meterTags;
     private MeterSpec spec;
-    private Map<Tags, PodGroup> metrics = new ConcurrentHashMap<>();
-    private final Map<String, String> productNameMapping;
+    private final Map<Tags, PodGroup> metrics = new ConcurrentHashMap<>();
+    // How long an empty group keeps reporting zero before its meters are removed
+    private final Duration emptyGroupGracePeriod;
+    // Tags of the empty groups waiting for eviction
+    private final TimerWheel<Tags> evictions;
+    private final UsageSampler sampler;
+
+    /**
+     * A watcher with a pod event source of its own.
+     */
+    public PodWatcher(KubernetesClient client, MeterRegistry meterRegistry, MeterSpec spec, OperatorConfig config) {
+        this(new PodEventSource(client, meterRegistry, config), true, meterRegistry, spec, config, Tags.empty());
+    }
 
-    private final CpuMeasurer cpuMeasurer;
+    /**
+     * A watcher receiving pod events from a source shared with the watchers of other Meters.
+     */
+    PodWatcher(PodEventSource source, MeterRegistry meterRegistry, MeterSpec spec, OperatorConfig config, Tags meterTags) {
+        this(source, false, meterRegistry, spec, config, meterTags);
+    }
 
-    public PodWatcher(KubernetesClient client, MeterRegistry meterRegistry, MeterSpec spec, OperatorConfig config) {
-        this.client = client;
+    private PodWatcher(PodEventSource source, boolean ownsSource, MeterRegistry meterRegistry, MeterSpec spec,
+            OperatorConfig config, Tags meterTags) {
+        this.source = source;
+        this.ownsSource = ownsSource;
         this.meterRegistry = meterRegistry;
         this.config = config;
+        this.meterTags = meterTags;
         this.spec = spec;
-        this.productNameMapping = convertListToMap(config.productNameMapping());
- 
-        cpuMeasurer = new CpuMeasurer(client);
+        this.emptyGroupGracePeriod = config.meter().emptyGroupGracePeriod();
+        this.evictions = new TimerWheel<>(TimeUnit.MILLISECONDS.toNanos(EVICTION_TICK_MILLIS), EVICTION_WHEEL_SLOTS, System.nanoTime());
+        this.sampler = source.sampler();
+
+        source.register(this);
+    }
+
+    /**
+     * Start watching the namespaces of the spec, and sampling the usage of the pods in them.
+     */
+    void start() {
+        source.start();
+    }
+
+    /**
+     * Stop receiving pod events, and remove the meters of every pod.
+     */
+    void stop() {
+        source.unregister(this);
+
+        synchronized (source) {
+            evictions.clear();
+
+            // Only remove the meters of this watcher, leaving any others registered
+            for (PodGroup podGroup : metrics.values()) {
+                podGroup.removeMeters(meterRegistry);
+            }
+            metrics.clear();
+        }
+
+        if (ownsSource) {
+            source.stop();
+        }
     }
 
     static Map<String, String> convertListToMap(List<String> productNameMapAsList) {
@@ -58,63 +122,41 @@ class PodWatcher implements Watcher<Pod> {
             .collect(Collectors.toMap(kv -> kv[0], kv -> kv[1]));
     }
 
-    @Override
+    /**
+     * Apply a pod event to the source, as if received from its watch.
+     */
     public void eventReceived(Action action, Pod resource) {
-        if (!shouldWatch(spec.getWatchNamespaces(), resource.getMetadata().getNamespace())) {
-            // If we're not watching all namespaces or the event is from a namespace we're not watching, do nothing
-            return;
-        }
-
-        if (resource.getMetadata().getLabels().containsKey(config.pod().identifier())) {
-            // Get/Create metric                
-            Tags tags = generateTags(resource.getMetadata().getLabels());
-            PodGroup podGroup = metrics.get(tags);
-
-            switch (action) {
-                case ADDED:
-                    if (includePod(config, resource.getMetadata().getLabels(), spec)) {
-                        LOG.trace("Adding pod to metrics gathering: " + resource.getMetadata().getName() + " in " + resource.getMetadata().getNamespace());
-                        if (podGroup == null) {
-                            podGroup = new PodGroup();
-                            podGroup.addPod(resource.getMetadata().getName(), resource.getMetadata().getNamespace());
-                            metrics.put(tags, podGroup);
-    
-                            // Create Gauge
-                            podGroup.setCpuGauge(
-                                Gauge.builder(config.meter().cpu(), podGroup, cpuMeasurer)
-                                    .tags(tags)
-                                    .register(meterRegistry));
-                        } else {
-                            podGroup.addPod(resource.getMetadata().getName(), resource.getMetadata().getNamespace());
-                        }
-                    }
-                    break;
-                case DELETED:
-                    if (podGroup != null) {
-                        podGroup.removePod(resource.getMetadata().getName());
-
-                        if (podGroup.list().size() == 0) {
-                            // Remove the pod and clear cpu Gauge meter
-                            metrics.remove(tags).removeCpuGauge(meterRegistry);
-                            //TODO This might need to have a delay by a few scrapes at 0 before removal? Waiting on feedback from Todd
-                        }
-                    }
-                    break;
-                default:
-                    break;
-            }
+        source.eventReceived(action, resource);
+    }
+
+    // Called by the source with its lock held.
+    // Only change the groups when the pod starts or stops being metered, or its tags change
+    void podUpdated(PodRecord previous, PodRecord record) {
+        final boolean wasMetered = previous != null && isMetered(previous, spec);
+        final boolean isMetered = isMetered(record, spec);
+        final boolean tagsChanged = previous != null && !previous.tags.equals(record.tags);
+
+        if (wasMetered && (!isMetered || tagsChanged)) {
+            removeFromGroup(previous);
+        }
+        if (isMetered && (!wasMetered || tagsChanged)) {
+            addToGroup(record);
+        }
+    }
+
+    // Called by the source with its lock held
+    void podForgotten(PodRecord record) {
+        if (isMetered(record, spec)) {
+            removeFromGroup(record);
         }
     }
 
-    @Override
-    public void onClose() {
-        meterRegistry.clear();
-        metrics.clear();
+    Set<String> watchNamespaces() {
+        return spec.getWatchNamespaces();
     }
 
-    @Override
-    public void onClose(WatcherException cause) {
-        onClose();
+    Collection<PodGroup> groups() {
+        return metrics.values();
     }
 
     Boolean shouldWatch(Set<String> watchingNamespaces, String namespace) {
@@ -122,160 +164,226 @@ class PodWatcher implements Watcher<Pod> {
             || watchingNamespaces.contains("");
     }
 
-    static Boolean isInfrastructure(OperatorConfig config, Map<String, String> podLabels) {
-        if (podLabels.containsKey(config.pod().componentTypeLabel())) {
-            if (podLabels.get(config.pod().componentTypeLabel()).equals(config.pod().componentTypeInfrastructure())) {
-                return true;
-            }
-        }
-        return false;
+    boolean includePod(Map<String, String> podLabels, MeterSpec spec) {
+        return source.includes(podLabels, spec.getIncludeInfrastructure());
     }
 
-    Boolean includePod(OperatorConfig config, Map<String, String> podLabels, MeterSpec spec) {
-        if (!spec.getIncludeInfrastructure() && isInfrastructure(config, podLabels)) {
-            return false;
+    void updateSpec(MeterSpec newSpec) {
+        final boolean scopesChanged;
+
+        synchronized (source) {
+            if (newSpec.equals(spec)) {
+                // Specs are identical, no updates needed
+                return;
+            }
+
+            final MeterSpec oldSpec = spec;
+            spec = newSpec;
+
+            if (Objects.equals(oldSpec.getIncludeInfrastructure(), newSpec.getIncludeInfrastructure())
+                    && Objects.equals(oldSpec.getWatchNamespaces(), newSpec.getWatchNamespaces())) {
+                // Nothing affecting which pods are metered has changed
+                return;
+            }
+
+            // Only move the pods whose inclusion differs between the specs, leaving other groups untouched
+            for (PodRecord record : source.knownPods()) {
+                final boolean wasMetered = isMetered(record, oldSpec);
+                final boolean isMetered = isMetered(record, newSpec);
+
+                if (wasMetered && !isMetered) {
+                    removeFromGroup(record);
+                } else if (!wasMetered && isMetered) {
+                    addToGroup(record);
+                }
+            }
+
+            scopesChanged = !PodEventSource.watchScopes(oldSpec.getWatchNamespaces())
+                .equals(PodEventSource.watchScopes(newSpec.getWatchNamespaces()));
         }
 
-        final String productName = mapProductNames(podLabels.get(config.pod().identifier()));
-        if (!config.allowedProductNames().contains(productName)) {
-            return false;
+        // Opening watches lists pods, which is done without the lock
+        if (scopesChanged) {
+            source.watchNamespacesChanged();
         }
+    }
 
-        return true;
+    private boolean isMetered(PodRecord record, MeterSpec meterSpec) {
+        return shouldWatch(meterSpec.getWatchNamespaces(), record.namespace)
+            && includePod(record.labels, meterSpec);
     }
 
-    void updateSpec(MeterSpec newSpec) {
-        if (newSpec.equals(spec)) {
-            // Specs are identical, no updates needed
-            return;
+    private Tags tags(PodRecord record) {
+        // The pod's own tags when the Meter has none
+        return record.tags.and(meterTags);
+    }
+
+    private void addToGroup(PodRecord record) {
+        LOG.trace("Adding pod to metrics gathering: " + record.name + " in " + record.namespace + " on " + record.node);
+
+        // Get/Create metric
+        final Tags tags = tags(record);
+        PodGroup podGroup = metrics.get(tags);
+        if (podGroup == null) {
+            podGroup = new PodGroup();
+            podGroup.addPod(record.name, record.namespace);
+            metrics.put(tags, podGroup);
+
+            registerMeters(podGroup, tags);
+        } else {
+            // Revive the meters of a group waiting for eviction
+            evictions.cancel(tags);
+            podGroup.addPod(record.name, record.namespace);
         }
+    }
 
-        // Recreate metrics
-        meterRegistry.clear();
-        metrics.clear();
+    private void removeFromGroup(PodRecord record) {
+        final Tags tags = tags(record);
+        final PodGroup podGroup = metrics.get(tags);
+        if (podGroup != null) {
+            podGroup.removePod(record.name, record.namespace);
 
-        PodList pods = client.pods().inAnyNamespace().list();
-        for (Pod pod : pods.getItems()) {
-            if (!shouldWatch(newSpec.getWatchNamespaces(), pod.getMetadata().getNamespace())) {
-                // If we're not watching all namespaces or the event is from a namespace we're not watching, do nothing
-                continue;
-            }
-    
-            if (pod.getMetadata().getLabels().containsKey(config.pod().identifier())) {
-                // Get/Create metric                
-                Tags tags = generateTags(pod.getMetadata().getLabels());
-                PodGroup podGroup = metrics.get(tags);
-
-                if (includePod(config, pod.getMetadata().getLabels(), newSpec)) {
-                    LOG.trace("Adding pod to metrics gathering: " + pod.getMetadata().getName() + " in " + pod.getMetadata().getNamespace());
-                    if (podGroup == null) {
-                        podGroup = new PodGroup();
-                        podGroup.addPod(pod.getMetadata().getName(), pod.getMetadata().getNamespace());
-                        metrics.put(tags, podGroup);
-
-                        // Create Gauge
-                        podGroup.setCpuGauge(
-                            Gauge.builder(config.meter().cpu(), podGroup, cpuMeasurer)
-                                .tags(tags)
-                                .register(meterRegistry));
-                    } else {
-                        podGroup.addPod(pod.getMetadata().getName(), pod.getMetadata().getNamespace());
-                    }
+            if (podGroup.size() == 0) {
+                if (emptyGroupGracePeriod.isZero()) {
+                    // Remove the group and clear its meters
+                    metrics.remove(tags).removeMeters(meterRegistry);
+                } else {
+                    // Report zero for a while, so pods replaced by a rolling deployment don't churn the series
+                    evictions.schedule(tags, emptyGroupGracePeriod.toNanos(), System.nanoTime());
                 }
             }
         }
+    }
 
-        // Update the MeterSpec instance
-        spec = newSpec;
+    // Called by the source with its lock held
+    void evictExpiredGroups() {
+        for (Tags tags : evictions.advance(System.nanoTime())) {
+            final PodGroup podGroup = metrics.get(tags);
+            if (podGroup != null && podGroup.size() == 0) {
+                metrics.remove(tags).removeMeters(meterRegistry);
+            }
+        }
+    }
+
+    private void registerMeters(PodGroup podGroup, Tags tags) {
+        podGroup.setCpuGauge(
+            Gauge.builder(config.meter().cpu(), podGroup, sampler::cpu)
+                .tags(tags)
+                .register(meterRegistry));
+
+        if (config.meter().memory().isPresent()) {
+            podGroup.setMemoryGauge(
+                Gauge.builder(config.meter().memory().get(), podGroup, sampler::memory)
+                    .tags(tags)
+                    .register(meterRegistry));
+        }
+
+        if (config.meter().cpuSeconds().isPresent()) {
+            podGroup.setCpuSecondsCounter(
+                FunctionCounter.builder(config.meter().cpuSeconds().get(), podGroup, PodGroup::cpuSeconds)
+                    .tags(tags)
+                    .baseUnit("seconds")
+                    .register(meterRegistry));
+        }
+    }
+
+    // Testing purposes only
+    int knownPodCount() {
+        return source.knownPodCount();
     }
 
     String watchedPods() {
         int count = 0;
         for (PodGroup podGroup : metrics.values()) {
-            count += podGroup.pods.size();
+            count += podGroup.size();
         }
         return Integer.toString(count);
     }
-    
-    private Tags generateTags(Map<String, String> labels) {
-        Tags metricTags = Tags.empty();
-
-        for (Entry<String, String> entry : labels.entrySet()) {
-            final String labelName = stripLabelPrefix(entry.getKey());
-            if (config.meter().labels().contains(labelName)) {
-                metricTags = metricTags.and(labelName, mapProductNames(entry.getValue()));
-            }
-        }
 
-        return metricTags;
-    }
+    static class UsageMeasurer {
+        private final String resource;
+        private final ToLongFunction<Quantity> parser;
+        // Decimal places of the base unit in the parsed unit, 9 for nanocores in a core
+        private final int scale;
 
-    private String stripLabelPrefix(String labelName) {
-        if (config.pod().removeLabelPrefix().isPresent() && config.pod().labelPrefix().isPresent()) {
-            if (config.pod().removeLabelPrefix().get() && labelName.startsWith(config.pod().labelPrefix().get())) {
-                return labelName.substring(config.pod().labelPrefix().get().length());
-            }
+        UsageMeasurer(String resource, ToLongFunction<Quantity> parser, int scale) {
+            this.resource = resource;
+            this.parser = parser;
+            this.scale = scale;
         }
 
-        return labelName;
-    }
-
-    // Should be a "hack" that can be removed when we're communicating with our own Tenant for metrics collection
-    private String mapProductNames(String labelValue) {
-        if (productNameMapping.containsKey(labelValue)) {
-            return productNameMapping.get(labelValue);
+        static UsageMeasurer cpu() {
+            return new UsageMeasurer("cpu", QuantityParser::nanocores, 9);
         }
 
-        return labelValue;
-    }
-
-    static class CpuMeasurer implements ToDoubleFunction<PodGroup> {
-        private final KubernetesClient client;
-
-        public CpuMeasurer(KubernetesClient client) {
-            this.client = client;
+        static UsageMeasurer memory() {
+            return new UsageMeasurer("memory", QuantityParser::bytes, 0);
         }
 
-        @Override
-        public double applyAsDouble(PodGroup value) {
-            BigDecimal cpuCount = new BigDecimal(0);
+        /**
+         * Total the usage of the resource, in cores or bytes, by the pods in a group.
+         *
+         * @param podMetrics Metrics gathered for all watched pods in the current cycle, keyed by {@link PodMetricsCollector#key(String, String)}
+         */
+        public double measure(PodGroup value, Map<String, PodMetrics> podMetrics) {
+            long total = 0;
+            // Only used for quantities QuantityParser doesn't handle, which metrics-server doesn't return,
+            // or a total too large for a long
+            BigDecimal otherTotal = null;
+
+            for (String podKey : value.list().keySet()) {
+                // Pods that are not "ready", or without metrics available yet, are absent
+                PodMetrics metricsForPod = podMetrics.get(podKey);
+                if (metricsForPod == null) {
+                    continue;
+                }
 
-            for (Entry<String, String> entry : value.list().entrySet()) {
-                if (client.pods().inNamespace(entry.getValue()).withName(entry.getKey()).isReady()) {
-                    try {
-                        for (ContainerMetrics metrics : client.top().pods().metrics(entry.getValue(), entry.getKey()).getContainers()) {
-                            Quantity qty = metrics.getUsage().get("cpu");
-                            if (qty != null) {
-                                cpuCount = cpuCount.add(Quantity.getAmountInBytes(qty));
-                            }
+                for (ContainerMetrics metrics : metricsForPod.getContainers()) {
+                    Quantity qty = metrics.getUsage().get(resource);
+                    if (qty != null) {
+                        final long parsed = parser.applyAsLong(qty);
+                        if (parsed != QuantityParser.UNSUPPORTED && parsed <= Long.MAX_VALUE - total) {
+                            total += parsed;
+                        } else {
+                            otherTotal = otherTotal == null
+                                ? Quantity.getAmountInBytes(qty)
+                                : otherTotal.add(Quantity.getAmountInBytes(qty));
                         }
-                    } catch (KubernetesClientException kce) {
-                        // Ignore, as it likely means a pod is "ready", but no metrics available yet
-                        // Log a debug message in case it's an error of a different kind
-                        LOG.debug(kce);
                     }
-                } else {
-                    // Ignore, as the pod is not "ready"
                 }
             }
 
-            return cpuCount.doubleValue();
+            if (otherTotal != null) {
+                return otherTotal.add(BigDecimal.valueOf(total, scale)).doubleValue();
+            }
+            return total / Math.pow(10, scale);
         }
 
     }
 
     static class PodGroup {
-        // Key - Pod name, Value - Pod namespace
-        private final Map<String, String> pods = new HashMap<>();
+        // Key - Pod key, Value - Pod namespace
+        // Changed by the watch, while read by the UsageSampler and status updates, without a shared lock
+        private final Map<String, String> pods = new ConcurrentHashMap<>();
         private Gauge cpuGauge;
         private Gauge memoryGauge;
+        private FunctionCounter cpuSecondsCounter;
+
+        // Integration of the sampled CPU usage, only updated by the UsageSampler thread
+        private volatile double cpuSeconds;
+        private double lastCpu;
+        private long lastSampleNanos = -1;
 
-        public void removePod(String podName) {
-            pods.remove(podName);
+        public void removePod(String podName, String namespace) {
+            pods.remove(PodMetricsCollector.key(namespace, podName));
         }
 
         public void addPod(String podName, String namespace) {
-            pods.put(podName, namespace);
+            pods.put(PodMetricsCollector.key(namespace, podName), namespace);
+        }
+
+        public int size() {
+            return pods.size();
         }
 
         public void setCpuGauge(Gauge gauge) {
@@ -286,24 +394,64 @@ class PodWatcher implements Watcher<Pod> {
             memoryGauge = gauge;
         }
 
+        public void setCpuSecondsCounter(FunctionCounter counter) {
+            cpuSecondsCounter = counter;
+        }
+
+        public void removeMeters(MeterRegistry registry) {
+            removeGauges(registry);
+            removeCpuSecondsCounter(registry);
+        }
+
         public void removeGauges(MeterRegistry registry) {
             removeCpuGauge(registry);
             removeMemoryGauge(registry);
         }
 
+        public void removeCpuSecondsCounter(MeterRegistry registry) {
+            if (cpuSecondsCounter != null) {
+                registry.remove(cpuSecondsCounter);
+                cpuSecondsCounter = null;
+            }
+        }
+
         public void removeCpuGauge(MeterRegistry registry) {
-            registry.remove(cpuGauge);
-            cpuGauge = null;
+            if (cpuGauge != null) {
+                registry.remove(cpuGauge);
+                cpuGauge = null;
+            }
         }
 
         public void removeMemoryGauge(MeterRegistry registry) {
-            registry.remove(memoryGauge);
-            memoryGauge = null;
+            if (memoryGauge != null) {
+                registry.remove(memoryGauge);
+                memoryGauge = null;
+            }
         }
 
+        /**
+         * The pods of the group, keyed by {@link PodMetricsCollector#key(String, String)}, with their namespace.
+         * Iterating never fails while pods are added or removed, although changes may not be seen.
+         */
         public Map<String, String> list() {
             return Collections.unmodifiableMap(pods);
         }
+
+        /**
+         * Add the core-seconds used since the previous sample, using the average
+         * of both samples so a missed sample is accounted for by the next one.
+         */
+        void integrateCpu(double cpu, long sampleNanos) {
+            if (lastSampleNanos >= 0 && sampleNanos > lastSampleNanos) {
+                cpuSeconds += (lastCpu + cpu) / 2 * (sampleNanos - lastSampleNanos) / 1_000_000_000d;
+            }
+            lastCpu = cpu;
+            lastSampleNanos = sampleNanos;
+        }
+
+        public double cpuSeconds() {
+            return cpuSeconds;
+        }
     }
 
 }
@@ -0,0 +1,132 @@
+package com.redhat;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+
+/**
+ * Allocation free parsing of the quantities returned by metrics-server,
+ * avoiding the BigDecimal arithmetic of {@link Quantity#getAmountInBytes(Quantity)}.
+ */
+final class QuantityParser {
+    static final long NANOS_PER_CORE = 1_000_000_000L;
+
+    // A quantity that can't be handled without BigDecimal, use Quantity.getAmountInBytes() instead
+    static final long UNSUPPORTED = -1;
+
+    // Any amount with up to 18 digits fits in a long
+    private static final int MAX_DIGITS = 18;
+
+    private QuantityParser() {
+    }
+
+    /**
+     * Convert a CPU quantity with an "n", "u", "m" or no suffix into nanocores.
+     *
+     * @return the nanocores, or {@link #UNSUPPORTED} for any other format
+     */
+    static long nanocores(Quantity quantity) {
+        final long multiplier = cpuMultiplier(quantity.getFormat());
+        if (multiplier == UNSUPPORTED) {
+            return UNSUPPORTED;
+        }
+
+        final long amount = parseAmount(quantity.getAmount());
+        if (amount == UNSUPPORTED || amount > Long.MAX_VALUE / multiplier) {
+            return UNSUPPORTED;
+        }
+
+        return amount * multiplier;
+    }
+
+    /**
+     * Convert a memory quantity with a binary ("Ki", "Mi", ...), decimal ("k", "M", ...) or no suffix into bytes.
+     *
+     * @return the bytes, or {@link #UNSUPPORTED} for any other format
+     */
+    static long bytes(Quantity quantity) {
+        final long multiplier = memoryMultiplier(quantity.getFormat());
+        if (multiplier == UNSUPPORTED) {
+            return UNSUPPORTED;
+        }
+
+        final long amount = parseAmount(quantity.getAmount());
+        if (amount == UNSUPPORTED || amount > Long.MAX_VALUE / multiplier) {
+            return UNSUPPORTED;
+        }
+
+        return amount * multiplier;
+    }
+
+    private static long cpuMultiplier(String format) {
+        if (format == null || format.isEmpty()) {
+            return NANOS_PER_CORE;
+        }
+
+        if (format.length() == 1) {
+            switch (format.charAt(0)) {
+                case 'n':
+                    return 1L;
+                case 'u':
+                    return 1_000L;
+                case 'm':
+                    return 1_000_000L;
+                default:
+                    break;
+            }
+        }
+
+        return UNSUPPORTED;
+    }
+
+    private static long memoryMultiplier(String format) {
+        if (format == null || format.isEmpty()) {
+            return 1L;
+        }
+
+        switch (format) {
+            case "Ki":
+                return 1L << 10;
+            case "Mi":
+                return 1L << 20;
+            case "Gi":
+                return 1L << 30;
+            case "Ti":
+                return 1L << 40;
+            case "Pi":
+                return 1L << 50;
+            case "Ei":
+                return 1L << 60;
+            case "k":
+                return 1_000L;
+            case "M":
+                return 1_000_000L;
+            case "G":
+                return 1_000_000_000L;
+            case "T":
+                return 1_000_000_000_000L;
+            case "P":
+                return 1_000_000_000_000_000L;
+            case "E":
+                return 1_000_000_000_000_000_000L;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    // Only plain, non-negative, integers are handled
+    private static long parseAmount(String amount) {
+        if (amount == null || amount.isEmpty() || amount.length() > MAX_DIGITS) {
+            return UNSUPPORTED;
+        }
+
+        long value = 0;
+        for (int i = 0; i < amount.length(); i++) {
+            final char c = amount.charAt(i);
+            if (c < '0' || c > '9') {
+                return UNSUPPORTED;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,120 @@
+package com.redhat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Resolves the meter {@link Tags} of a pod from its labels.
+ * The pod labels for each tag are worked out once from the configuration,
+ * and the resolved Tags are cached by the values of those labels only,
+ * so pods of the same product share a single Tags instance.
+ */
+class TagResolver {
+    static final int DEFAULT_MAX_CACHED = 1024;
+
+    // Pod label names, and the tag each is reported as
+    private final String[] labelNames;
+    private final String[] tagNames;
+    private final UnaryOperator<String> valueMapper;
+    private final Map<Object, Tags> cache;
+
+    TagResolver(OperatorConfig config, UnaryOperator<String> valueMapper, int maxCached) {
+        final List<String> labels = new ArrayList<>();
+        final List<String> tags = new ArrayList<>();
+
+        if (config.meter().labels() != null) {
+            final String prefix = prefixToRemove(config);
+            for (String tagName : config.meter().labels()) {
+                if (prefix != null) {
+                    labels.add(prefix + tagName);
+                    tags.add(tagName);
+                }
+
+                if (prefix == null || !tagName.startsWith(prefix)) {
+                    // Not stripped of the prefix, so the label is reported as is
+                    labels.add(tagName);
+                    tags.add(tagName);
+                }
+            }
+        }
+
+        this.labelNames = labels.toArray(new String[0]);
+        this.tagNames = tags.toArray(new String[0]);
+        this.valueMapper = valueMapper;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Tags> eldest) {
+                return size() > maxCached;
+            }
+        };
+    }
+
+    private static String prefixToRemove(OperatorConfig config) {
+        if (config.pod().removeLabelPrefix() == null || config.pod().labelPrefix() == null) {
+            return null;
+        }
+
+        if (config.pod().removeLabelPrefix().orElse(false) && config.pod().labelPrefix().isPresent()) {
+            return config.pod().labelPrefix().get();
+        }
+
+        return null;
+    }
+
+    synchronized Tags resolve(Map<String, String> podLabels) {
+        final Object key = key(podLabels);
+
+        Tags tags = cache.get(key);
+        if (tags == null) {
+            tags = build(podLabels);
+            cache.put(key, tags);
+        }
+
+        return tags;
+    }
+
+    // Testing purposes only
+    synchronized int cachedCount() {
+        return cache.size();
+    }
+
+    // The values of the labels that are reported, the only ones affecting the Tags
+    private Object key(Map<String, String> podLabels) {
+        if (labelNames.length == 1) {
+            // Avoid an allocation in the common case of a single label, the product name
+            return podLabels.get(labelNames[0]);
+        }
+
+        final String[] values = new String[labelNames.length];
+        for (int i = 0; i < labelNames.length; i++) {
+            values[i] = podLabels.get(labelNames[i]);
+        }
+        return Arrays.asList(values);
+    }
+
+    private Tags build(Map<String, String> podLabels) {
+        final List<Tag> tags = new ArrayList<>(labelNames.length);
+        for (int i = 0; i < labelNames.length; i++) {
+            final String value = podLabels.get(labelNames[i]);
+            if (value != null) {
+                tags.add(Tag.of(tagNames[i], valueMapper.apply(value)));
+            }
+        }
+
+        final Tags resolved = Tags.of(tags);
+        // Intern, so different label values mapped to the same product share the Tags
+        for (Tags cached : cache.values()) {
+            if (cached.equals(resolved)) {
+                return cached;
+            }
+        }
+        return resolved;
+    }
+}
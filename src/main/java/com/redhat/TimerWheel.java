@@ -0,0 +1,105 @@
+package com.redhat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hashed timer wheel, expiring items after a delay to the precision of a tick.
+ * Scheduling and cancelling are O(1), and advancing only visits the slots of the ticks passed.
+ * Not thread safe, callers synchronize access.
+ *
+ * @param <T> Item to expire, compared by equals
+ */
+class TimerWheel<T> {
+    private final long tickNanos;
+    private final List<Set<T>> slots;
+    // Key - Scheduled item, Value - Tick it expires on
+    private final Map<T, Long> deadlines = new HashMap<>();
+    private final long originNanos;
+    private long currentTick;
+
+    TimerWheel(long tickNanos, int slotCount, long nowNanos) {
+        this.tickNanos = tickNanos;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new HashSet<>());
+        }
+        this.originNanos = nowNanos;
+    }
+
+    /**
+     * Schedule an item to expire after a delay, replacing any previous schedule of it.
+     */
+    void schedule(T item, long delayNanos, long nowNanos) {
+        cancel(item);
+
+        // Round up, so an item never expires early
+        final long deadline = Math.max(tick(nowNanos) + (delayNanos + tickNanos - 1) / tickNanos, currentTick + 1);
+        deadlines.put(item, deadline);
+        slots.get(slot(deadline)).add(item);
+    }
+
+    /**
+     * @return true if the item was scheduled
+     */
+    boolean cancel(T item) {
+        final Long deadline = deadlines.remove(item);
+        if (deadline == null) {
+            return false;
+        }
+
+        slots.get(slot(deadline)).remove(item);
+        return true;
+    }
+
+    /**
+     * Advance the wheel to the current time.
+     *
+     * @return the items expired since the last advance
+     */
+    List<T> advance(long nowNanos) {
+        final long targetTick = tick(nowNanos);
+        final List<T> expired = new ArrayList<>();
+
+        // Each slot only needs visiting once, however many ticks have passed
+        final long lastTick = Math.min(targetTick, currentTick + slots.size());
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            final Iterator<T> iterator = slots.get(slot(tick)).iterator();
+            while (iterator.hasNext()) {
+                final T item = iterator.next();
+                if (deadlines.get(item) <= targetTick) {
+                    iterator.remove();
+                    deadlines.remove(item);
+                    expired.add(item);
+                }
+            }
+        }
+
+        currentTick = Math.max(currentTick, targetTick);
+        return expired;
+    }
+
+    int size() {
+        return deadlines.size();
+    }
+
+    void clear() {
+        for (Set<T> slot : slots) {
+            slot.clear();
+        }
+        deadlines.clear();
+    }
+
+    private long tick(long nowNanos) {
+        return (nowNanos - originNanos) / tickNanos;
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % slots.size());
+    }
+}
@@ -0,0 +1,185 @@
+package com.redhat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.logging.Logger;
+
+import com.redhat.PodWatcher.UsageMeasurer;
+import com.redhat.PodWatcher.PodGroup;
+
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetrics;
+
+/**
+ * Samples the usage of every {@link PodGroup} on a background thread, so that
+ * gauges only read the last published snapshot when Prometheus scrapes.
+ * Each cycle gathers metrics for all watched pods at once, so every group in a
+ * snapshot is totalled from the same response.
+ */
+class UsageSampler implements Runnable {
+    private static final Logger LOG = Logger.getLogger(UsageSampler.class);
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+)(ms|s|m|h|d|w|y)");
+
+    private final Supplier<Collection<PodGroup>> groups;
+    private final Set<String> readyPods;
+    private final PodMetricsCollector collector;
+    private final UsageMeasurer cpuMeasurer;
+    // Null when memory isn't metered
+    private final UsageMeasurer memoryMeasurer;
+    private final Duration interval;
+
+    private ScheduledExecutorService executor;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public UsageSampler(Supplier<Collection<PodGroup>> groups, Set<String> readyPods, PodMetricsCollector collector,
+            UsageMeasurer cpuMeasurer, UsageMeasurer memoryMeasurer, Duration interval) {
+        this.groups = groups;
+        this.readyPods = readyPods;
+        this.collector = collector;
+        this.cpuMeasurer = cpuMeasurer;
+        this.memoryMeasurer = memoryMeasurer;
+        this.interval = interval;
+    }
+
+    synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        collector.start();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "usage-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        collector.stop();
+        snapshot = Snapshot.EMPTY;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Only groups known at the start of the cycle are part of the snapshot
+            final List<PodGroup> cycleGroups = new ArrayList<>(groups.get());
+
+            // Key - Pod key, Value - Pod namespace
+            final Map<String, String> measuredPods = new HashMap<>();
+            for (PodGroup group : cycleGroups) {
+                for (Entry<String, String> entry : group.list().entrySet()) {
+                    if (readyPods.contains(entry.getKey())) {
+                        measuredPods.put(entry.getKey(), entry.getValue());
+                    } else {
+                        // Ignore, as the pod is not "ready"
+                    }
+                }
+            }
+
+            final Map<String, PodMetrics> podMetrics = collector.collect(measuredPods);
+
+            // CPU and memory both come from the same metrics response
+            final Map<PodGroup, Double> cpuUsage = new HashMap<>();
+            final Map<PodGroup, Double> memoryUsage = memoryMeasurer != null ? new HashMap<>() : Collections.emptyMap();
+            final long sampleNanos = System.nanoTime();
+            for (PodGroup group : cycleGroups) {
+                final double cpu = cpuMeasurer.measure(group, podMetrics);
+                cpuUsage.put(group, cpu);
+                if (memoryMeasurer != null) {
+                    memoryUsage.put(group, memoryMeasurer.measure(group, podMetrics));
+                }
+                group.integrateCpu(cpu, sampleNanos);
+            }
+            snapshot = new Snapshot(cpuUsage, memoryUsage);
+        } catch (RuntimeException e) {
+            // Keep the previous snapshot, and don't let the exception cancel further sampling
+            LOG.error("Failed to sample pod usage", e);
+        }
+    }
+
+    double cpu(PodGroup group) {
+        return snapshot.cpuUsage.getOrDefault(group, 0d);
+    }
+
+    double memory(PodGroup group) {
+        return snapshot.memoryUsage.getOrDefault(group, 0d);
+    }
+
+    /**
+     * Parse a Prometheus duration, such as "30s" or "1m30s", as used by {@link OperatorConfig#scrapeInterval()}.
+     */
+    static Duration parseDuration(String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Duration must not be empty");
+        }
+
+        Duration duration = Duration.ZERO;
+        final Matcher matcher = DURATION_PART.matcher(value);
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            final long amount = Long.parseLong(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "ms":
+                    duration = duration.plusMillis(amount);
+                    break;
+                case "s":
+                    duration = duration.plusSeconds(amount);
+                    break;
+                case "m":
+                    duration = duration.plusMinutes(amount);
+                    break;
+                case "h":
+                    duration = duration.plusHours(amount);
+                    break;
+                case "d":
+                    duration = duration.plusDays(amount);
+                    break;
+                case "w":
+                    duration = duration.plusDays(amount * 7);
+                    break;
+                default:
+                    duration = duration.plusDays(amount * 365);
+                    break;
+            }
+            end = matcher.end();
+        }
+
+        if (end != value.length() || duration.isZero()) {
+            throw new IllegalArgumentException("Invalid duration: " + value);
+        }
+
+        return duration;
+    }
+
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap());
+
+        private final Map<PodGroup, Double> cpuUsage;
+        private final Map<PodGroup, Double> memoryUsage;
+
+        Snapshot(Map<PodGroup, Double> cpuUsage, Map<PodGroup, Double> memoryUsage) {
+            this.cpuUsage = Collections.unmodifiableMap(cpuUsage);
+            this.memoryUsage = Collections.unmodifiableMap(memoryUsage);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CoalescingQueueTest {
+
+    @Test
+    void testLatestValueKept() {
+        CoalescingQueue<String, String> queue = new CoalescingQueue<>(10);
+        queue.offer("pod-1", "ADDED pod-1");
+        queue.offer("pod-2", "ADDED pod-2");
+        queue.offer("pod-1", "DELETED pod-1");
+
+        assertEquals(List.of("DELETED pod-1", "ADDED pod-2"), queue.drain());
+        assertEquals(1, queue.coalesced());
+        assertTrue(queue.drain().isEmpty());
+    }
+
+    @Test
+    void testFullQueueDrops() {
+        CoalescingQueue<String, String> queue = new CoalescingQueue<>(2);
+        assertTrue(queue.offer("pod-1", "ADDED pod-1"));
+        assertTrue(queue.offer("pod-2", "ADDED pod-2"));
+        assertFalse(queue.offer("pod-3", "ADDED pod-3"));
+        // Pods already queued are still updated
+        assertTrue(queue.offer("pod-2", "MODIFIED pod-2"));
+
+        assertEquals(1, queue.dropped());
+        assertTrue(queue.resetOverflowed());
+        assertFalse(queue.resetOverflowed());
+        assertEquals(List.of("ADDED pod-1", "MODIFIED pod-2"), queue.drain());
+        assertTrue(queue.offer("pod-3", "ADDED pod-3"));
+    }
+}
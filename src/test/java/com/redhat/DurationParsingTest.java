@@ -0,0 +1,30 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class DurationParsingTest {
+
+    @Test
+    void testSingleUnit() {
+        assertEquals(Duration.ofSeconds(30), UsageSampler.parseDuration("30s"));
+        assertEquals(Duration.ofMillis(500), UsageSampler.parseDuration("500ms"));
+        assertEquals(Duration.ofMinutes(2), UsageSampler.parseDuration("2m"));
+    }
+
+    @Test
+    void testCombinedUnits() {
+        assertEquals(Duration.ofSeconds(90), UsageSampler.parseDuration("1m30s"));
+    }
+
+    @Test
+    void testInvalidDuration() {
+        assertThrows(IllegalArgumentException.class, () -> UsageSampler.parseDuration("30"));
+        assertThrows(IllegalArgumentException.class, () -> UsageSampler.parseDuration("thirty seconds"));
+        assertThrows(IllegalArgumentException.class, () -> UsageSampler.parseDuration(""));
+    }
+}
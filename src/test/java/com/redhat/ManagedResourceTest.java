@@ -0,0 +1,39 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+import io.fabric8.kubernetes.api.model.rbac.Role;
+import io.fabric8.kubernetes.api.model.rbac.RoleBuilder;
+
+public class ManagedResourceTest {
+    private static Role role(String resourceVersion, String... verbs) {
+        return new RoleBuilder()
+                .withNewMetadata()
+                    .withName("my-role")
+                    .withResourceVersion(resourceVersion)
+                .endMetadata()
+                .addNewRule()
+                    .addNewApiGroup("")
+                    .withResources("pods")
+                    .withVerbs(verbs)
+                .endRule()
+                .build();
+    }
+
+    @Test
+    void testHashIgnoresUnmanagedState() {
+        ManagedResource<Role> resource = new ManagedResource<>(null, Role::getRules);
+
+        assertEquals(resource.hash(role(null, "get", "list")), resource.hash(role("42", "get", "list")));
+    }
+
+    @Test
+    void testHashChangesWithManagedState() {
+        ManagedResource<Role> resource = new ManagedResource<>(null, Role::getRules);
+
+        assertNotEquals(resource.hash(role(null, "get", "list")), resource.hash(role(null, "get")));
+    }
+}
@@ -2,6 +2,7 @@ package com.redhat;
 
 import static io.restassured.RestAssured.when;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertLinesMatch;
@@ -15,6 +16,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -37,8 +39,10 @@ import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetrics;
 import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetricsBuilder;
 import io.fabric8.kubernetes.client.Watcher.Action;
 import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.fabric8.openshift.client.OpenShiftClient;
 import io.javaoperatorsdk.operator.api.UpdateControl;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.quarkus.test.InMemoryLogHandler;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.kubernetes.client.KubernetesTestServer;
@@ -63,6 +67,12 @@ public class MeterControllerTest {
     @Inject
     MeterRegistry meterRegistry;
 
+    @Inject
+    OpenShiftClient client;
+
+    @Inject
+    OperatorConfig config;
+
     @BeforeEach
     void setup() {
         // Cleanup
@@ -88,6 +98,13 @@ public class MeterControllerTest {
         return inMemoryLogHandler.getRecords().stream().map(r -> r.getMessage()).collect(Collectors.toList());
     }
 
+    // While watching, only the pod event queue meters are registered until pods are metered
+    private static void assertNoUsageMetrics() {
+        when().get("/q/metrics").then().statusCode(200)
+                .body(containsString(PodEventSource.EVENT_QUEUE_DEPTH_METER))
+                .body(not(containsString("prod_name")));
+    }
+
     @Test
     void testReconcileMarkedForDeletion() {
         Meter meter = new Meter();
@@ -120,11 +137,11 @@ public class MeterControllerTest {
         assertFalse(response.isUpdateCustomResource());
         assertTrue(response.isUpdateStatusSubResource());
         assertNull(meterController.getWatcher());
+        assertFalse(meterController.informersStarted());
 
-        assertEquals(2, inMemoryLogHandler.getRecords().size());
-        assertLinesMatch(List.of("Meter collection disabled.",
-            "Stopped watching for events. No further metrics captured."),
-            getLogMessages());
+        // setup() already stopped the watcher, so there is nothing left to stop
+        assertEquals(1, inMemoryLogHandler.getRecords().size());
+        assertLinesMatch(List.of("Meter collection disabled."), getLogMessages());
 
         MeterStatus status = response.getCustomResource().getStatus();
         assertNotNull(status);
@@ -161,8 +178,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
    }
 
     @Test
@@ -179,6 +195,7 @@ public class MeterControllerTest {
         assertFalse(response.isUpdateCustomResource());
         assertTrue(response.isUpdateStatusSubResource());
         assertNotNull(meterController.getWatcher());
+        assertTrue(meterController.informersStarted());
 
         assertEquals(3, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -191,8 +208,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Disable meter collection
         Meter updatedMeter = new Meter();
@@ -207,6 +223,7 @@ public class MeterControllerTest {
         assertFalse(response.isUpdateCustomResource());
         assertTrue(response.isUpdateStatusSubResource());
         assertNull(meterController.getWatcher());
+        assertFalse(meterController.informersStarted());
 
         assertEquals(6, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -252,8 +269,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Setup test pods
         final Pod pod1 = new PodBuilder()
@@ -278,10 +294,11 @@ public class MeterControllerTest {
 
         response = meterController.createOrUpdateResource(meter, null);
 
+        // The status is unchanged, so it isn't written again
         assertNotNull(response);
-        assertNotNull(response.getCustomResource());
+        assertNull(response.getCustomResource());
         assertFalse(response.isUpdateCustomResource());
-        assertTrue(response.isUpdateStatusSubResource());
+        assertFalse(response.isUpdateStatusSubResource());
 
         assertEquals(5, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -291,7 +308,7 @@ public class MeterControllerTest {
             "Updating Meter spec in PodWatcher."),
             getLogMessages());
 
-        status = response.getCustomResource().getStatus();
+        status = meter.getStatus();
         assertNotNull(status);
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("2", status.getWatchedPods());
@@ -363,8 +380,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Setup test pods
         final Pod pod1 = new PodBuilder()
@@ -389,10 +405,11 @@ public class MeterControllerTest {
 
         response = meterController.createOrUpdateResource(meter, null);
 
+        // The status is unchanged, so it isn't written again
         assertNotNull(response);
-        assertNotNull(response.getCustomResource());
+        assertNull(response.getCustomResource());
         assertFalse(response.isUpdateCustomResource());
-        assertTrue(response.isUpdateStatusSubResource());
+        assertFalse(response.isUpdateStatusSubResource());
 
         assertEquals(5, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -402,7 +419,7 @@ public class MeterControllerTest {
             "Updating Meter spec in PodWatcher."),
             getLogMessages());
 
-        status = response.getCustomResource().getStatus();
+        status = meter.getStatus();
         assertNotNull(status);
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("2", status.getWatchedPods());
@@ -413,7 +430,9 @@ public class MeterControllerTest {
                 .body(containsString("# HELP appsvcs_cpu_usage_cores"))
                 .body(containsString("# TYPE appsvcs_cpu_usage_cores gauge"))
                 // Note, test for 0.0 as we're not able to mock the metrics from pods in a unit test
-                .body(containsString("appsvcs_cpu_usage_cores{prod_name=\"Red_Hat_Integration\",} 0.0"));
+                .body(containsString("appsvcs_cpu_usage_cores{prod_name=\"Red_Hat_Integration\",} 0.0"))
+                .body(containsString("# TYPE appsvcs_memory_usage_bytes gauge"))
+                .body(containsString("appsvcs_memory_usage_bytes{prod_name=\"Red_Hat_Integration\",} 0.0"));
     }
 
     @Test
@@ -442,8 +461,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Setup test pods
         final Pod pod1 = new PodBuilder()
@@ -468,10 +486,11 @@ public class MeterControllerTest {
 
         response = meterController.createOrUpdateResource(meter, null);
 
+        // The status is unchanged, so it isn't written again
         assertNotNull(response);
-        assertNotNull(response.getCustomResource());
+        assertNull(response.getCustomResource());
         assertFalse(response.isUpdateCustomResource());
-        assertTrue(response.isUpdateStatusSubResource());
+        assertFalse(response.isUpdateStatusSubResource());
 
         assertEquals(5, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -481,7 +500,7 @@ public class MeterControllerTest {
             "Updating Meter spec in PodWatcher."),
             getLogMessages());
 
-        status = response.getCustomResource().getStatus();
+        status = meter.getStatus();
         assertNotNull(status);
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("2", status.getWatchedPods());
@@ -558,8 +577,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Setup test pods
         final Pod pod1 = new PodBuilder()
@@ -580,12 +598,18 @@ public class MeterControllerTest {
         mockServer.getClient().pods().create(pod1);
         mockServer.getClient().pods().create(pod2);
 
+        // Only badNamespace is watched, pods of other namespaces are listed when their namespace is watched.
+        // Had their events been delivered, the pods would be known well within a second
+        Awaitility.await().during(Duration.ofSeconds(1)).atMost(Duration.ofSeconds(5))
+            .until(() -> meterController.getWatcher().knownPodCount() == 0);
+
         response = meterController.createOrUpdateResource(meter, null);
 
+        // The status is unchanged, so it isn't written again
         assertNotNull(response);
-        assertNotNull(response.getCustomResource());
+        assertNull(response.getCustomResource());
         assertFalse(response.isUpdateCustomResource());
-        assertTrue(response.isUpdateStatusSubResource());
+        assertFalse(response.isUpdateStatusSubResource());
 
         assertEquals(5, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -595,13 +619,12 @@ public class MeterControllerTest {
             "Updating Meter spec in PodWatcher."),
             getLogMessages());
 
-        status = response.getCustomResource().getStatus();
+        status = meter.getStatus();
         assertNotNull(status);
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Update namespace watching
         Meter updatedMeter = new Meter();
@@ -640,6 +663,150 @@ public class MeterControllerTest {
                 .body(containsString("appsvcs_cpu_usage_cores{prod_name=\"Red_Hat_Integration\",} 0.0"));
     }
 
+    @Test
+    void testStatusWatchedPodsThrottled() {
+        // The test profile writes every change of the count, so use a controller with an interval of its own
+        final MeterController throttledController = new MeterController(client, new SimpleMeterRegistry(),
+            TestUtil.withStatusUpdateInterval(config, Duration.ofSeconds(10)), "test");
+
+        Meter meter = new Meter();
+        meter.getMetadata().setUid("throttled-meter-uid");
+        MeterSpec spec = new MeterSpec();
+        spec.setMeterCollectionEnabled(true);
+        meter.setSpec(spec);
+
+        // Reconcile on the controller's own events, as the operator would
+        final AtomicReference<MeterStatus> writtenStatus = new AtomicReference<>();
+        throttledController.init(TestUtil.eventSourceManager(event -> {
+            if (throttledController.createOrUpdateResource(meter, null).isUpdateStatusSubResource()) {
+                writtenStatus.set(meter.getStatus());
+            }
+        }));
+
+        try {
+            UpdateControl<Meter> response = throttledController.createOrUpdateResource(meter, null);
+            assertTrue(response.isUpdateStatusSubResource());
+            assertEquals("0", meter.getStatus().getWatchedPods());
+
+            final Pod pod = new PodBuilder()
+                    .withNewMetadata()
+                        .withName("my-pod-91")
+                        .withNamespace("test")
+                        .withLabels(Map.of("rht.prod_name", "Red_Hat_Integration"))
+                    .endMetadata()
+                    .build();
+            mockServer.getClient().pods().create(pod);
+            Awaitility.await().atMost(Duration.ofMinutes(2)).until(() -> throttledController.getWatcher().watchedPods().equals("1"));
+
+            // The count changed within the interval, so the last one written is kept
+            response = throttledController.createOrUpdateResource(meter, null);
+            assertFalse(response.isUpdateStatusSubResource());
+            assertEquals("0", meter.getStatus().getWatchedPods());
+
+            // Written once the interval has passed, without the Meter being changed again
+            Awaitility.await().atMost(Duration.ofSeconds(30)).until(() -> writtenStatus.get() != null);
+            assertEquals("1", writtenStatus.get().getWatchedPods());
+        } finally {
+            throttledController.deleteResource(meter, null);
+        }
+    }
+
+    private static Meter namedMeter(String name, Set<String> watchNamespaces) {
+        Meter meter = new Meter();
+        meter.getMetadata().setName(name);
+        MeterSpec spec = new MeterSpec();
+        spec.setMeterCollectionEnabled(true);
+        spec.setWatchNamespaces(watchNamespaces);
+        meter.setSpec(spec);
+        return meter;
+    }
+
+    @Test
+    void testSecondMeterNotCollectingWithoutMeterLabel() {
+        Meter first = namedMeter("first", Set.of("test"));
+        Meter second = namedMeter("second", Set.of("other"));
+
+        try {
+            UpdateControl<Meter> response = meterController.createOrUpdateResource(first, null);
+            assertEquals("TRUE", response.getCustomResource().getStatus().getCurrentlyWatching());
+
+            // Their metrics couldn't be told apart
+            response = meterController.createOrUpdateResource(second, null);
+            assertEquals("FALSE", response.getCustomResource().getStatus().getCurrentlyWatching());
+            assertTrue(getLogMessages().contains("Meter collection not started, Meter first is already collecting. "
+                + "Set operator.meter.meter-label for several Meters to collect."));
+        } finally {
+            meterController.deleteResource(second, null);
+            meterController.deleteResource(first, null);
+        }
+    }
+
+    @Test
+    void testRefusedMeterCollectsOnceCollectingMeterDeleted() {
+        final MeterController controller = new MeterController(client, new SimpleMeterRegistry(), config, "test");
+        Meter first = namedMeter("first", Set.of("test"));
+        Meter second = namedMeter("second", Set.of("other"));
+        second.getMetadata().setUid("second-meter-uid");
+
+        // Reconcile on the controller's own events, as the operator would
+        final AtomicReference<MeterStatus> reconciledStatus = new AtomicReference<>();
+        controller.init(TestUtil.eventSourceManager(event -> {
+            controller.createOrUpdateResource(second, null);
+            reconciledStatus.set(second.getStatus());
+        }));
+
+        try {
+            assertEquals("TRUE", controller.createOrUpdateResource(first, null).getCustomResource().getStatus().getCurrentlyWatching());
+            assertEquals("FALSE", controller.createOrUpdateResource(second, null).getCustomResource().getStatus().getCurrentlyWatching());
+
+            controller.deleteResource(first, null);
+            // Kept for the Meter waiting to collect
+            assertNotNull(client.monitoring().serviceMonitors().inNamespace("openshift-monitoring")
+                .withName("application-services-operator-metrics").get());
+
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> reconciledStatus.get() != null);
+            assertEquals("TRUE", reconciledStatus.get().getCurrentlyWatching());
+        } finally {
+            controller.deleteResource(second, null);
+            controller.deleteResource(first, null);
+        }
+    }
+
+    @Test
+    void testMetersWithOverlappingNamespaces() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final MeterController labelledController = new MeterController(client, registry,
+            TestUtil.withMeterLabel(config, "meter"), "test");
+        Meter first = namedMeter("first", Set.of("test"));
+        Meter overlapping = namedMeter("overlapping", Set.of("test", "other"));
+        Meter second = namedMeter("second", Set.of("other"));
+
+        try {
+            assertEquals("TRUE", labelledController.createOrUpdateResource(first, null).getCustomResource().getStatus().getCurrentlyWatching());
+            // The pods of test would be counted by both Meters
+            assertEquals("FALSE", labelledController.createOrUpdateResource(overlapping, null).getCustomResource().getStatus().getCurrentlyWatching());
+            assertEquals("TRUE", labelledController.createOrUpdateResource(second, null).getCustomResource().getStatus().getCurrentlyWatching());
+
+            final Pod pod = new PodBuilder()
+                    .withNewMetadata()
+                        .withName("my-pod-101")
+                        .withNamespace("other")
+                        .withLabels(Map.of("rht.prod_name", "Red_Hat_Integration"))
+                    .endMetadata()
+                    .build();
+            mockServer.getClient().pods().inNamespace("other").create(pod);
+
+            Awaitility.await().atMost(Duration.ofMinutes(2))
+                .until(() -> registry.find(config.meter().cpu()).tag("meter", "second").gauge() != null);
+            assertNull(registry.find(config.meter().cpu()).tag("meter", "first").gauge());
+            assertNull(registry.find(config.meter().cpu()).tag("meter", "overlapping").gauge());
+        } finally {
+            labelledController.deleteResource(second, null);
+            labelledController.deleteResource(overlapping, null);
+            labelledController.deleteResource(first, null);
+        }
+    }
+
     @Test
     // Remove this test when we're connecting to a separate tenant
     void testProductNamesLimitedToDefinedThree() {
@@ -667,8 +834,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Setup test pods
         final Pod pod1 = new PodBuilder()
@@ -701,10 +867,11 @@ public class MeterControllerTest {
 
         response = meterController.createOrUpdateResource(meter, null);
 
+        // The status is unchanged, so it isn't written again
         assertNotNull(response);
-        assertNotNull(response.getCustomResource());
+        assertNull(response.getCustomResource());
         assertFalse(response.isUpdateCustomResource());
-        assertTrue(response.isUpdateStatusSubResource());
+        assertFalse(response.isUpdateStatusSubResource());
 
         assertEquals(5, inMemoryLogHandler.getRecords().size());
         assertLinesMatch(List.of("Meter collection enabled.",
@@ -714,7 +881,7 @@ public class MeterControllerTest {
             "Updating Meter spec in PodWatcher."),
             getLogMessages());
 
-        status = response.getCustomResource().getStatus();
+        status = meter.getStatus();
         assertNotNull(status);
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("2", status.getWatchedPods());
@@ -755,8 +922,7 @@ public class MeterControllerTest {
         assertEquals("TRUE", status.getCurrentlyWatching());
         assertEquals("0", status.getWatchedPods());
  
-        when().get("/q/metrics").then().statusCode(200)
-                .body(IsEmptyString.emptyOrNullString());
+        assertNoUsageMetrics();
 
         // Setup test pods
         final Pod pod1 = new PodBuilder()
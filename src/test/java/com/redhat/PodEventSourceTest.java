@@ -0,0 +1,190 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodListBuilder;
+import io.fabric8.kubernetes.api.model.WatchEvent;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.WatcherException;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PodEventSourceTest {
+    private static OperatorConfig config = TestUtil.operatorConfig(List.of("3scale=Red_Hat_Integration"),
+        List.of("Red_Hat_Integration", "Red_Hat_Runtimes"),
+        TestUtil.meterConfig("appsvcs_cpu_usage_cores", List.of("prod_name")),
+        TestUtil.podConfig("rht.prod_name", "rht.", true, "rht.subcomp_t", "infrastructure"));
+
+    private KubernetesServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private PodEventSource source;
+    private PodWatcher podWatcher;
+
+    @BeforeEach
+    void startSource() {
+        server = new KubernetesServer(false, true);
+        server.before();
+        server.getClient().pods().create(pod("my-pod-1"));
+
+        meterRegistry = new SimpleMeterRegistry();
+        final MeterSpec spec = new MeterSpec();
+        spec.setWatchNamespaces(Set.of("test"));
+        source = new PodEventSource(server.getClient(), meterRegistry, config);
+        podWatcher = new PodWatcher(source, meterRegistry, spec, config, Tags.empty());
+        podWatcher.start();
+
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> knownPods().equals(Set.of("my-pod-1")));
+        // Events are only sent once the mock server has opened the watch, so change the pod until a change arrives
+        final AtomicInteger probe = new AtomicInteger();
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> {
+            server.getClient().pods().inNamespace("test").withName("my-pod-1").edit(pod -> new PodBuilder(pod)
+                .editMetadata()
+                    .addToLabels("watch-probe", Integer.toString(probe.incrementAndGet()))
+                .endMetadata()
+                .build());
+            return watchProbeSeen();
+        });
+    }
+
+    @AfterEach
+    void stopSource() {
+        podWatcher.stop();
+        source.stop();
+        server.after();
+    }
+
+    private static Pod pod(String name) {
+        return pod(name, "Red_Hat_Integration");
+    }
+
+    private static Pod pod(String name, String product) {
+        return new PodBuilder()
+                .withNewMetadata()
+                    .withName(name)
+                    .withNamespace("test")
+                    .withLabels(Map.of("rht.prod_name", product))
+                .endMetadata()
+                .build();
+    }
+
+    private Set<String> knownPods() {
+        return knownPods(source);
+    }
+
+    private boolean watchProbeSeen() {
+        synchronized (source) {
+            return source.knownPods().stream().anyMatch(record -> record.labels.containsKey("watch-probe"));
+        }
+    }
+
+    private static Set<String> knownPods(PodEventSource source) {
+        synchronized (source) {
+            return source.knownPods().stream().map(record -> record.name).collect(Collectors.toSet());
+        }
+    }
+
+    @Test
+    void testReconnectResumesWatch() {
+        source.failWatch("test", new WatcherException("Connection reset"));
+        server.getClient().pods().create(pod("my-pod-2"));
+
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> knownPods().equals(Set.of("my-pod-1", "my-pod-2")));
+        assertEquals("2", podWatcher.watchedPods());
+    }
+
+    @Test
+    void testReconnectAfterGoneListsPodsAgain() {
+        source.failWatch("test", new WatcherException("Too old resource version",
+            new KubernetesClientException(new StatusBuilder().withCode(HttpURLConnection.HTTP_GONE).build())));
+        // Neither change is seen by the closed watch, only by listing the pods again
+        server.getClient().pods().inNamespace("test").withName("my-pod-1").delete();
+        server.getClient().pods().create(pod("my-pod-2"));
+
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> knownPods().equals(Set.of("my-pod-2")));
+        assertEquals("1", podWatcher.watchedPods());
+    }
+
+    @Test
+    void testOnlyPodsOfAllowedProductsSelected() {
+        // The CRUD mock server can't evaluate set-based selectors, so only answer requests carrying the expected one
+        final KubernetesServer selectingServer = new KubernetesServer(false, false);
+        selectingServer.before();
+        final String podsPath = "/api/v1/namespaces/test/pods?";
+        final String selector = "labelSelector=rht.prod_name%20in%20%283scale%2CRed_Hat_Integration%2CRed_Hat_Runtimes%29";
+        selectingServer.expect().get().withPath(podsPath + "limit=500&" + selector)
+            .andReturn(200, new PodListBuilder()
+                .withNewMetadata()
+                    .withResourceVersion("1")
+                .endMetadata()
+                .addToItems(pod("my-pod-1"))
+                .build())
+            .once();
+        selectingServer.expect().get().withPath(podsPath + selector + "&resourceVersion=1&watch=true")
+            .andUpgradeToWebSocket()
+                .open()
+                    // Relabelled into an allowed product
+                    .waitFor(100).andEmit(new WatchEvent(pod("my-pod-2"), "ADDED"))
+                    // Relabelled out of the allowed products
+                    .waitFor(100).andEmit(new WatchEvent(pod("my-pod-1", "Other_Product"), "DELETED"))
+                .done()
+            .once();
+
+        final OperatorConfig selectingConfig = TestUtil.operatorConfig(config.productNameMapping(), config.allowedProductNames(),
+            config.meter(), TestUtil.podConfig("rht.prod_name", "rht.", true, "rht.subcomp_t", "infrastructure", true));
+        final MeterSpec spec = new MeterSpec();
+        spec.setWatchNamespaces(Set.of("test"));
+        final PodEventSource selectingSource = new PodEventSource(selectingServer.getClient(), new SimpleMeterRegistry(), selectingConfig);
+        final PodWatcher selectingWatcher = new PodWatcher(selectingSource, meterRegistry, spec, selectingConfig, Tags.empty());
+
+        try {
+            selectingWatcher.start();
+
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> knownPods(selectingSource).equals(Set.of("my-pod-2")));
+            assertEquals("1", selectingWatcher.watchedPods());
+        } finally {
+            selectingWatcher.stop();
+            selectingSource.stop();
+            selectingServer.after();
+        }
+    }
+
+    @Test
+    void testEventQueueMetersRegisteredWhileStarted() {
+        assertNotNull(meterRegistry.find(PodEventSource.DROPPED_EVENTS_METER).functionCounter());
+        assertNotNull(meterRegistry.find(PodEventSource.COALESCED_EVENTS_METER).functionCounter());
+        assertEquals(0, meterRegistry.find(PodEventSource.EVENT_QUEUE_DEPTH_METER).gauge().value());
+
+        source.stop();
+        assertNull(meterRegistry.find(PodEventSource.DROPPED_EVENTS_METER).functionCounter());
+        assertNull(meterRegistry.find(PodEventSource.COALESCED_EVENTS_METER).functionCounter());
+        assertNull(meterRegistry.find(PodEventSource.EVENT_QUEUE_DEPTH_METER).gauge());
+    }
+
+    @Test
+    void testReconnectDelayBacksOff() {
+        assertEquals(1_000, PodEventSource.reconnectDelayMillis(0));
+        assertEquals(2_000, PodEventSource.reconnectDelayMillis(1));
+        assertEquals(32_000, PodEventSource.reconnectDelayMillis(5));
+        assertEquals(60_000, PodEventSource.reconnectDelayMillis(6));
+        assertEquals(60_000, PodEventSource.reconnectDelayMillis(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,138 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.Watcher.Action;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PodEventTest {
+    private static OperatorConfig config = TestUtil.operatorConfig(List.of("3scale=Red_Hat_Integration"),
+        List.of("Red_Hat_Integration", "Red_Hat_Runtimes"),
+        TestUtil.meterConfig("appsvcs_cpu_usage_cores", List.of("prod_name")),
+        TestUtil.podConfig("rht.prod_name", "rht.", true, "rht.subcomp_t", "infrastructure"));
+
+    private SimpleMeterRegistry meterRegistry;
+    private PodWatcher podWatcher;
+
+    @BeforeEach
+    void createPodWatcher() {
+        meterRegistry = new SimpleMeterRegistry();
+        podWatcher = new PodWatcher(null, meterRegistry, new MeterSpec(), config);
+    }
+
+    private static Pod pod(String name, Map<String, String> labels) {
+        return new PodBuilder()
+                .withNewMetadata()
+                    .withName(name)
+                    .withNamespace("test")
+                    .withLabels(labels)
+                .endMetadata()
+                .build();
+    }
+
+    @Test
+    void testProductNameChanged() {
+        podWatcher.eventReceived(Action.ADDED, pod("my-pod-1", Map.of("rht.prod_name", "Red_Hat_Integration")));
+        podWatcher.eventReceived(Action.ADDED, pod("my-pod-2", Map.of("rht.prod_name", "3scale")));
+        assertEquals(1, meterRegistry.find("appsvcs_cpu_usage_cores").gauges().size());
+
+        podWatcher.eventReceived(Action.MODIFIED, pod("my-pod-2", Map.of("rht.prod_name", "Red_Hat_Runtimes")));
+        assertEquals("2", podWatcher.watchedPods());
+        assertEquals(2, meterRegistry.find("appsvcs_cpu_usage_cores").gauges().size());
+        assertNotNull(meterRegistry.find("appsvcs_cpu_usage_cores").tag("prod_name", "Red_Hat_Runtimes").gauge());
+
+        podWatcher.eventReceived(Action.MODIFIED, pod("my-pod-2", Map.of("rht.prod_name", "Quarkus")));
+        assertEquals("1", podWatcher.watchedPods());
+        assertEquals(1, meterRegistry.find("appsvcs_cpu_usage_cores").gauges().size());
+        assertEquals(2, podWatcher.knownPodCount());
+    }
+
+    @Test
+    void testIdentifierRemoved() {
+        podWatcher.eventReceived(Action.ADDED, pod("my-pod-1", Map.of("rht.prod_name", "Red_Hat_Integration")));
+        assertEquals("1", podWatcher.watchedPods());
+
+        podWatcher.eventReceived(Action.MODIFIED, pod("my-pod-1", Map.of("app", "my-app")));
+        assertEquals("0", podWatcher.watchedPods());
+        assertEquals(0, podWatcher.knownPodCount());
+        assertEquals(0, meterRegistry.getMeters().size());
+    }
+
+    @Test
+    void testModifiedBeforeAdded() {
+        podWatcher.eventReceived(Action.MODIFIED, pod("my-pod-1", Map.of("rht.prod_name", "Red_Hat_Integration")));
+        assertEquals("1", podWatcher.watchedPods());
+    }
+
+    @Test
+    void testStopRemovesOwnMetersOnly() {
+        meterRegistry.counter("unrelated_total");
+        podWatcher.eventReceived(Action.ADDED, pod("my-pod-1", Map.of("rht.prod_name", "Red_Hat_Integration")));
+        podWatcher.eventReceived(Action.ADDED, pod("my-pod-2", Map.of("rht.prod_name", "Red_Hat_Runtimes")));
+        assertEquals(3, meterRegistry.getMeters().size());
+
+        podWatcher.stop();
+        assertEquals(1, meterRegistry.getMeters().size());
+        assertNotNull(meterRegistry.find("unrelated_total").counter());
+    }
+
+    @Test
+    void testEmptyGroupRevived() {
+        OperatorConfig graceConfig = TestUtil.operatorConfig(null, List.of("Red_Hat_Integration"),
+            TestUtil.meterConfig("appsvcs_cpu_usage_cores", List.of("prod_name"), Duration.ofMinutes(2)),
+            TestUtil.podConfig("rht.prod_name", "rht.", true, "rht.subcomp_t", "infrastructure"));
+        PodWatcher graceWatcher = new PodWatcher(null, meterRegistry, new MeterSpec(), graceConfig);
+
+        final Pod pod = pod("my-pod-1", Map.of("rht.prod_name", "Red_Hat_Integration"));
+        graceWatcher.eventReceived(Action.ADDED, pod);
+        final Gauge gauge = meterRegistry.find("appsvcs_cpu_usage_cores").gauge();
+        assertNotNull(gauge);
+
+        // The empty group keeps reporting zero
+        graceWatcher.eventReceived(Action.DELETED, pod);
+        assertEquals("0", graceWatcher.watchedPods());
+        assertSame(gauge, meterRegistry.find("appsvcs_cpu_usage_cores").gauge());
+        assertEquals(0.0, gauge.value());
+
+        graceWatcher.eventReceived(Action.ADDED, pod("my-pod-2", Map.of("rht.prod_name", "Red_Hat_Integration")));
+        assertEquals("1", graceWatcher.watchedPods());
+        assertSame(gauge, meterRegistry.find("appsvcs_cpu_usage_cores").gauge());
+    }
+
+    @Test
+    void testWatchersShareSource() {
+        PodEventSource source = new PodEventSource(null, meterRegistry, config);
+        MeterSpec otherSpec = new MeterSpec();
+        otherSpec.setWatchNamespaces(Set.of("other"));
+        PodWatcher first = new PodWatcher(source, meterRegistry, new MeterSpec(), config, Tags.of("meter", "first"));
+        PodWatcher second = new PodWatcher(source, meterRegistry, otherSpec, config, Tags.of("meter", "second"));
+
+        source.eventReceived(Action.ADDED, pod("my-pod-1", Map.of("rht.prod_name", "Red_Hat_Integration")));
+        assertEquals("1", first.watchedPods());
+        assertEquals("0", second.watchedPods());
+        assertNotNull(meterRegistry.find("appsvcs_cpu_usage_cores").tags("meter", "first", "prod_name", "Red_Hat_Integration").gauge());
+
+        // A watcher registered later is handed the pods already known
+        PodWatcher third = new PodWatcher(source, meterRegistry, new MeterSpec(), config, Tags.of("meter", "third"));
+        assertEquals("1", third.watchedPods());
+        assertEquals(2, meterRegistry.find("appsvcs_cpu_usage_cores").gauges().size());
+
+        first.stop();
+        assertEquals(1, meterRegistry.find("appsvcs_cpu_usage_cores").gauges().size());
+        assertNotNull(meterRegistry.find("appsvcs_cpu_usage_cores").tag("meter", "third").gauge());
+    }
+}
@@ -0,0 +1,59 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class PodGroupTest {
+
+    @Test
+    void testCpuSecondsIntegration() {
+        PodWatcher.PodGroup group = new PodWatcher.PodGroup();
+
+        // First sample only sets the starting point
+        group.integrateCpu(1.0, TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0.0, group.cpuSeconds());
+
+        group.integrateCpu(3.0, TimeUnit.SECONDS.toNanos(12));
+        assertEquals(4.0, group.cpuSeconds(), 0.000001);
+
+        // A missed sample is covered by the longer interval of the next one
+        group.integrateCpu(3.0, TimeUnit.SECONDS.toNanos(22));
+        assertEquals(34.0, group.cpuSeconds(), 0.000001);
+    }
+
+    @Test
+    void testPodsInDifferentNamespaces() {
+        PodWatcher.PodGroup group = new PodWatcher.PodGroup();
+        group.addPod("my-pod", "first");
+        group.addPod("my-pod", "second");
+        assertEquals(2, group.size());
+
+        group.removePod("my-pod", "first");
+        assertEquals(Map.of(PodMetricsCollector.key("second", "my-pod"), "second"), group.list());
+    }
+
+    @Test
+    void testChangedWhileIterating() {
+        PodWatcher.PodGroup group = new PodWatcher.PodGroup();
+        for (int i = 0; i < 100; i++) {
+            group.addPod("pod-" + i, "test");
+        }
+
+        // Pods added during the iteration may or may not be seen
+        int iterated = 0;
+        for (String podKey : group.list().keySet()) {
+            if (podKey.startsWith("test/")) {
+                final String podName = podKey.substring("test/".length());
+                group.removePod(podName, "test");
+                group.addPod(podName, "other");
+                iterated++;
+            }
+        }
+        assertEquals(100, iterated);
+        assertEquals(100, group.size());
+    }
+}
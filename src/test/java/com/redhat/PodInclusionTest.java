@@ -33,7 +33,7 @@ public class PodInclusionTest {
         MeterSpec spec = new MeterSpec();
         spec.setIncludeInfrastructure(true);
 
-        assertTrue(podWatcher.includePod(config, podLabels, spec));
+        assertTrue(podWatcher.includePod(podLabels, spec));
     }
 
     @Test
@@ -41,7 +41,19 @@ public class PodInclusionTest {
         MeterSpec spec = new MeterSpec();
         spec.setIncludeInfrastructure(false);
 
-        assertFalse(podWatcher.includePod(config, podLabels, spec));
+        assertFalse(podWatcher.includePod(podLabels, spec));
+    }
+
+    @Test
+    void testProductNames() {
+        PodInclusionMatcher matcher = new PodInclusionMatcher(config, Map.of("3scale", "Red_Hat_Integration",
+            "Red_Hat_Integration", "Red_Hat_Runtimes"));
+        MeterSpec spec = new MeterSpec();
+
+        assertTrue(matcher.includes(Map.of("rht.prod_name", "3scale"), spec.getIncludeInfrastructure()));
+        assertFalse(matcher.includes(Map.of("rht.prod_name", "Red_Hat_Integration"), spec.getIncludeInfrastructure()));
+        assertFalse(matcher.includes(Map.of("rht.prod_name", "Quarkus"), spec.getIncludeInfrastructure()));
+        assertFalse(matcher.includes(Map.of("rht.component_type", "infrastructure"), spec.getIncludeInfrastructure()));
     }
 
     @Test
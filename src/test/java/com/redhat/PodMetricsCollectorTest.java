@@ -0,0 +1,205 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.redhat.OperatorConfig.CollectionMode;
+
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetrics;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetricsBuilder;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetricsListBuilder;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PodMetricsCollectorTest {
+    private static final String NAMESPACE_PATH = "/apis/metrics.k8s.io/v1beta1/namespaces/test/pods";
+    private static final Duration WINDOW = Duration.ofSeconds(60);
+
+    private KubernetesServer server;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void startServer() {
+        server = new KubernetesServer(false, false);
+        server.before();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.after();
+    }
+
+    private PodMetricsCollector collector(CollectionMode mode) {
+        return new PodMetricsCollector(server.getClient(), meterRegistry, mode, 2, Duration.ofSeconds(5), Duration.ofSeconds(30));
+    }
+
+    // A reading whose window ended the given time ago
+    private static PodMetrics reading(String name, Duration age) {
+        return new PodMetricsBuilder()
+                .withNewMetadata()
+                    .withName(name)
+                    .withNamespace("test")
+                .endMetadata()
+                .withTimestamp(Instant.now().minus(age).toString())
+                .withWindow(new io.fabric8.kubernetes.api.model.Duration(WINDOW))
+                .addNewContainer()
+                    .withName("main")
+                    .withUsage(Map.of())
+                .endContainer()
+                .build();
+    }
+
+    private double hits() {
+        return meterRegistry.get(PodMetricsCollector.CACHE_HITS_METER).functionCounter().count();
+    }
+
+    private double misses() {
+        return meterRegistry.get(PodMetricsCollector.CACHE_MISSES_METER).functionCounter().count();
+    }
+
+    @Test
+    void testReadingReusedWithinWindow() {
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(200, new PodMetricsListBuilder().addToItems(reading("my-pod-1", Duration.ZERO)).build())
+            .once();
+        final PodMetricsCollector collector = collector(CollectionMode.NAMESPACE);
+
+        assertEquals(1, collector.collect(Map.of("test/my-pod-1", "test")).size());
+        assertEquals(1, collector.collect(Map.of("test/my-pod-1", "test")).size());
+
+        assertEquals(1, server.getMockServer().getRequestCount());
+        assertEquals(1, hits());
+        assertEquals(1, misses());
+    }
+
+    @Test
+    void testReadingExpiresWindowAfterItsTimestamp() {
+        // Fetched just now, but metrics-server already has a newer reading
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(200, new PodMetricsListBuilder().addToItems(reading("my-pod-1", WINDOW.plusSeconds(30))).build())
+            .times(2);
+        final PodMetricsCollector collector = collector(CollectionMode.NAMESPACE);
+
+        collector.collect(Map.of("test/my-pod-1", "test"));
+        collector.collect(Map.of("test/my-pod-1", "test"));
+
+        assertEquals(2, server.getMockServer().getRequestCount());
+        assertEquals(0, hits());
+        assertEquals(2, misses());
+    }
+
+    @Test
+    void testNamespaceRequestedAgainCountsEveryPod() {
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(200, new PodMetricsListBuilder()
+                .addToItems(reading("my-pod-1", Duration.ZERO), reading("my-pod-2", WINDOW.plusSeconds(30)))
+                .build())
+            .times(2);
+        final PodMetricsCollector collector = collector(CollectionMode.NAMESPACE);
+        final Map<String, String> pods = Map.of("test/my-pod-1", "test", "test/my-pod-2", "test");
+
+        assertEquals(2, collector.collect(pods).size());
+        // my-pod-1 is still fresh, but is requested again with the stale my-pod-2
+        assertEquals(2, collector.collect(pods).size());
+
+        assertEquals(2, server.getMockServer().getRequestCount());
+        assertEquals(0, hits());
+        assertEquals(4, misses());
+    }
+
+    @Test
+    void testPodModeOnlyRequestsStalePods() {
+        server.expect().get().withPath(NAMESPACE_PATH + "/my-pod-1")
+            .andReturn(200, reading("my-pod-1", Duration.ZERO))
+            .once();
+        server.expect().get().withPath(NAMESPACE_PATH + "/my-pod-2")
+            .andReturn(200, reading("my-pod-2", WINDOW.plusSeconds(30)))
+            .times(2);
+        final PodMetricsCollector collector = collector(CollectionMode.POD);
+        final Map<String, String> pods = Map.of("test/my-pod-1", "test", "test/my-pod-2", "test");
+
+        assertEquals(2, collector.collect(pods).size());
+        assertEquals(2, collector.collect(pods).size());
+
+        assertEquals(3, server.getMockServer().getRequestCount());
+        assertEquals(1, hits());
+        assertEquals(3, misses());
+    }
+
+    @Test
+    void testLastReadingKeptPastDeadline() {
+        final PodMetrics expired = reading("my-pod-1", WINDOW.plusSeconds(30));
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(200, new PodMetricsListBuilder().addToItems(expired).build())
+            .once();
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReply(200, request -> {
+                try {
+                    Thread.sleep(2_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new PodMetricsListBuilder().addToItems(reading("my-pod-1", Duration.ZERO)).build();
+            })
+            .once();
+        final PodMetricsCollector collector = new PodMetricsCollector(server.getClient(), meterRegistry,
+            CollectionMode.NAMESPACE, 2, Duration.ofMillis(500), Duration.ofSeconds(30));
+        collector.start();
+
+        try {
+            assertEquals(expired, collector.collect(Map.of("test/my-pod-1", "test")).get("test/my-pod-1"));
+            // Cancelled at the deadline, rather than reporting no usage for the pod
+            assertEquals(expired, collector.collect(Map.of("test/my-pod-1", "test")).get("test/my-pod-1"));
+        } finally {
+            collector.stop();
+        }
+    }
+
+    @Test
+    void testLastReadingKeptOnFailure() {
+        final PodMetrics expired = reading("my-pod-1", WINDOW.plusSeconds(30));
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(200, new PodMetricsListBuilder().addToItems(expired).build())
+            .once();
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(503, "metrics-server unavailable")
+            .once();
+        final PodMetricsCollector collector = collector(CollectionMode.NAMESPACE);
+
+        assertEquals(expired, collector.collect(Map.of("test/my-pod-1", "test")).get("test/my-pod-1"));
+        assertEquals(expired, collector.collect(Map.of("test/my-pod-1", "test")).get("test/my-pod-1"));
+    }
+
+    @Test
+    void testLastReadingDroppedOnceTooOld() {
+        // Expired longer ago than the readings kept for failed requests
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(200, new PodMetricsListBuilder().addToItems(reading("my-pod-1", WINDOW.multipliedBy(3).plusSeconds(30))).build())
+            .once();
+        server.expect().get().withPath(NAMESPACE_PATH)
+            .andReturn(503, "metrics-server unavailable")
+            .once();
+        final PodMetricsCollector collector = collector(CollectionMode.NAMESPACE);
+
+        assertEquals(1, collector.collect(Map.of("test/my-pod-1", "test")).size());
+        assertEquals(Map.of(), collector.collect(Map.of("test/my-pod-1", "test")));
+    }
+
+    @Test
+    void testNoReadingWithoutMetrics() {
+        server.expect().get().withPath(NAMESPACE_PATH + "/my-pod-1")
+            .andReturn(404, "not found")
+            .once();
+        final PodMetricsCollector collector = collector(CollectionMode.POD);
+
+        assertEquals(Map.of(), collector.collect(Map.of("test/my-pod-1", "test")));
+    }
+}
@@ -0,0 +1,93 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.ContainerMetrics;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.ContainerMetricsBuilder;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetrics;
+import io.fabric8.kubernetes.api.model.metrics.v1beta1.PodMetricsBuilder;
+
+public class QuantityParserTest {
+
+    @Test
+    void testCpuSuffixes() {
+        assertEquals(1234L, QuantityParser.nanocores(new Quantity("1234n")));
+        assertEquals(12_000L, QuantityParser.nanocores(new Quantity("12u")));
+        assertEquals(2_000_000L, QuantityParser.nanocores(new Quantity("2m")));
+        assertEquals(3_000_000_000L, QuantityParser.nanocores(new Quantity("3")));
+        assertEquals(0L, QuantityParser.nanocores(new Quantity("0")));
+    }
+
+    @Test
+    void testUnsupportedCpuQuantities() {
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.nanocores(new Quantity("1.5")));
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.nanocores(new Quantity("2k")));
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.nanocores(new Quantity("+5m")));
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.nanocores(new Quantity("99999999999999999999")));
+    }
+
+    @Test
+    void testMemorySuffixes() {
+        assertEquals(2_048_000L, QuantityParser.bytes(new Quantity("2000Ki")));
+        assertEquals(3L * 1024 * 1024, QuantityParser.bytes(new Quantity("3Mi")));
+        assertEquals(5_000_000L, QuantityParser.bytes(new Quantity("5M")));
+        assertEquals(512L, QuantityParser.bytes(new Quantity("512")));
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.bytes(new Quantity("1.5Gi")));
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.bytes(new Quantity("10m")));
+    }
+
+    @Test
+    void testMeasureMatchesBigDecimalTotal() {
+        final Random random = new Random(42);
+        final String[] suffixes = {"n", "u", "m", "", "k"};
+
+        for (int run = 0; run < 100; run++) {
+            PodWatcher.PodGroup group = new PodWatcher.PodGroup();
+            Map<String, PodMetrics> podMetrics = new HashMap<>();
+            BigDecimal expected = BigDecimal.ZERO;
+
+            for (int pod = 0; pod < 20; pod++) {
+                final String podName = "pod-" + pod;
+                group.addPod(podName, "test");
+
+                List<ContainerMetrics> containers = new ArrayList<>();
+                for (int container = 0; container < 3; container++) {
+                    Quantity qty = new Quantity(random.nextInt(1_000_000_000) + suffixes[random.nextInt(suffixes.length)]);
+                    expected = expected.add(Quantity.getAmountInBytes(qty));
+                    containers.add(new ContainerMetricsBuilder().withUsage(Map.of("cpu", qty)).build());
+                }
+
+                podMetrics.put(PodMetricsCollector.key("test", podName),
+                    new PodMetricsBuilder().withNewMetadata().withName(podName).withNamespace("test").endMetadata()
+                        .withContainers(containers)
+                        .build());
+            }
+
+            assertEquals(expected.doubleValue(), PodWatcher.UsageMeasurer.cpu().measure(group, podMetrics));
+        }
+    }
+
+    @Test
+    void testMeasureMemory() {
+        PodWatcher.PodGroup group = new PodWatcher.PodGroup();
+        group.addPod("pod-0", "test");
+        Map<String, PodMetrics> podMetrics = Map.of(PodMetricsCollector.key("test", "pod-0"),
+            new PodMetricsBuilder().withNewMetadata().withName("pod-0").withNamespace("test").endMetadata()
+                .addNewContainer().withUsage(Map.of("cpu", new Quantity("5m"), "memory", new Quantity("2000Ki"))).endContainer()
+                .addNewContainer().withUsage(Map.of("memory", new Quantity("1.5Gi"))).endContainer()
+                .build());
+
+        assertEquals(2_048_000d + 1_610_612_736d, PodWatcher.UsageMeasurer.memory().measure(group, podMetrics));
+        assertEquals(0.005d, PodWatcher.UsageMeasurer.cpu().measure(group, podMetrics));
+    }
+}
@@ -0,0 +1,62 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Tags;
+
+public class TagResolverTest {
+    private static OperatorConfig config = TestUtil.operatorConfig(null, List.of("Red_Hat_Integration"),
+        TestUtil.meterConfig("appsvcs_cpu_usage_cores", List.of("prod_name", "version")),
+        TestUtil.podConfig("rht.prod_name", "rht.", true, "rht.subcomp_t", "infrastructure"));
+
+    private static String mapProductNames(String value) {
+        return "3scale".equals(value) ? "Red_Hat_Integration" : value;
+    }
+
+    @Test
+    void testPrefixRemoved() {
+        TagResolver resolver = new TagResolver(config, TagResolverTest::mapProductNames, 10);
+
+        assertEquals(Tags.of("prod_name", "Red_Hat_Integration", "version", "1.0"),
+            resolver.resolve(Map.of("rht.prod_name", "Red_Hat_Integration", "rht.version", "1.0", "app", "my-app")));
+        assertEquals(Tags.of("prod_name", "Red_Hat_Integration"),
+            resolver.resolve(Map.of("prod_name", "3scale")));
+    }
+
+    @Test
+    void testPrefixKept() {
+        OperatorConfig prefixKept = TestUtil.operatorConfig(null, List.of("Red_Hat_Integration"),
+            TestUtil.meterConfig("appsvcs_cpu_usage_cores", List.of("rht.prod_name")),
+            TestUtil.podConfig("rht.prod_name", "rht.", false, "rht.subcomp_t", "infrastructure"));
+        TagResolver resolver = new TagResolver(prefixKept, TagResolverTest::mapProductNames, 10);
+
+        assertEquals(Tags.of("rht.prod_name", "Red_Hat_Integration"),
+            resolver.resolve(Map.of("rht.prod_name", "3scale")));
+        assertEquals(Tags.empty(), resolver.resolve(Map.of("prod_name", "3scale")));
+    }
+
+    @Test
+    void testTagsShared() {
+        TagResolver resolver = new TagResolver(config, TagResolverTest::mapProductNames, 10);
+
+        Tags tags = resolver.resolve(Map.of("rht.prod_name", "Red_Hat_Integration", "app", "first"));
+        assertSame(tags, resolver.resolve(Map.of("rht.prod_name", "Red_Hat_Integration", "app", "second")));
+        assertSame(tags, resolver.resolve(Map.of("rht.prod_name", "3scale")));
+    }
+
+    @Test
+    void testCacheBounded() {
+        TagResolver resolver = new TagResolver(config, TagResolverTest::mapProductNames, 10);
+
+        for (int i = 0; i < 100; i++) {
+            resolver.resolve(Map.of("rht.prod_name", "Product_" + i));
+        }
+        assertEquals(10, resolver.cachedCount());
+    }
+}
@@ -1,16 +1,30 @@
 package com.redhat;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import com.redhat.OperatorConfig.CollectionMode;
 import com.redhat.OperatorConfig.MeterConfig;
 import com.redhat.OperatorConfig.PodConfig;
 
+import io.javaoperatorsdk.operator.processing.event.EventHandler;
+import io.javaoperatorsdk.operator.processing.event.EventSource;
+import io.javaoperatorsdk.operator.processing.event.EventSourceManager;
+
 public class TestUtil {
     private TestUtil() {
     }
 
     public static MeterConfig meterConfig(final String cpuName, final List<String> labels) {
+        return meterConfig(cpuName, labels, Duration.ZERO);
+    }
+
+    public static MeterConfig meterConfig(final String cpuName, final List<String> labels,
+            final Duration emptyGroupGracePeriod) {
         return new OperatorConfig.MeterConfig() {
 
             @Override
@@ -18,11 +32,46 @@ public class TestUtil {
                 return cpuName;
             }
 
+            @Override
+            public Optional<String> memory() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> cpuSeconds() {
+                return Optional.empty();
+            }
+
             @Override
             public List<String> labels() {
                 return labels;
             }
 
+            @Override
+            public CollectionMode collectionMode() {
+                return CollectionMode.NAMESPACE;
+            }
+
+            @Override
+            public int collectionConcurrency() {
+                return 4;
+            }
+
+            @Override
+            public Optional<Duration> collectionDeadline() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Duration emptyGroupGracePeriod() {
+                return emptyGroupGracePeriod;
+            }
+
+            @Override
+            public Optional<String> meterLabel() {
+                return Optional.empty();
+            }
+
         };
     }
 
@@ -34,17 +83,59 @@ public class TestUtil {
                 return null;
             }
 
+            @Override
+            public Optional<String> memory() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> cpuSeconds() {
+                return Optional.empty();
+            }
+
             @Override
             public List<String> labels() {
                 return null;
             }
 
+            @Override
+            public CollectionMode collectionMode() {
+                return null;
+            }
+
+            @Override
+            public int collectionConcurrency() {
+                return 0;
+            }
+
+            @Override
+            public Optional<Duration> collectionDeadline() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Duration emptyGroupGracePeriod() {
+                return null;
+            }
+
+            @Override
+            public Optional<String> meterLabel() {
+                return Optional.empty();
+            }
+
         };
     }
 
+    // Selecting only the identifier label, as the mock server can't evaluate set-based selectors
     public static PodConfig podConfig(final String identifier, final String labelPrefix,
             final Boolean removeLabelPrefix, final String componentTypeLabel,
             final String componentTypeInfrastructure) {
+        return podConfig(identifier, labelPrefix, removeLabelPrefix, componentTypeLabel, componentTypeInfrastructure, false);
+    }
+
+    public static PodConfig podConfig(final String identifier, final String labelPrefix,
+            final Boolean removeLabelPrefix, final String componentTypeLabel,
+            final String componentTypeInfrastructure, final boolean selectProducts) {
         return new PodConfig() {
 
             @Override
@@ -54,12 +145,12 @@ public class TestUtil {
 
             @Override
             public Optional<String> labelPrefix() {
-                return Optional.of(labelPrefix);
+                return Optional.ofNullable(labelPrefix);
             }
 
             @Override
             public Optional<Boolean> removeLabelPrefix() {
-                return Optional.of(removeLabelPrefix);
+                return Optional.ofNullable(removeLabelPrefix);
             }
 
             @Override
@@ -72,6 +163,11 @@ public class TestUtil {
                 return componentTypeInfrastructure;
             }
 
+            @Override
+            public Optional<Boolean> selectProducts() {
+                return Optional.of(selectProducts);
+            }
+
         };
     }
 
@@ -103,6 +199,11 @@ public class TestUtil {
                 return null;
             }
 
+            @Override
+            public Optional<Boolean> selectProducts() {
+                return null;
+            }
+
         };
     }
 
@@ -121,6 +222,11 @@ public class TestUtil {
                 return "10s";
             }
 
+            @Override
+            public Duration statusUpdateInterval() {
+                return Duration.ZERO;
+            }
+
             @Override
             public MeterConfig meter() {
                 return meterConfig;
@@ -139,6 +245,128 @@ public class TestUtil {
         };
     }
 
+    public static OperatorConfig withStatusUpdateInterval(final OperatorConfig config, final Duration statusUpdateInterval) {
+        return new OperatorConfig() {
+
+            @Override
+            public List<String> productNameMapping() {
+                return config.productNameMapping();
+            }
+
+            @Override
+            public String scrapeInterval() {
+                return config.scrapeInterval();
+            }
+
+            @Override
+            public Duration statusUpdateInterval() {
+                return statusUpdateInterval;
+            }
+
+            @Override
+            public MeterConfig meter() {
+                return config.meter();
+            }
+
+            @Override
+            public PodConfig pod() {
+                return config.pod();
+            }
+
+            @Override
+            public List<String> allowedProductNames() {
+                return config.allowedProductNames();
+            }
+
+        };
+    }
+
+    public static OperatorConfig withMeterLabel(final OperatorConfig config, final String meterLabel) {
+        final MeterConfig meterConfig = config.meter();
+        final MeterConfig labelledMeterConfig = new OperatorConfig.MeterConfig() {
+
+            @Override
+            public String cpu() {
+                return meterConfig.cpu();
+            }
+
+            @Override
+            public Optional<String> memory() {
+                return meterConfig.memory();
+            }
+
+            @Override
+            public Optional<String> cpuSeconds() {
+                return meterConfig.cpuSeconds();
+            }
+
+            @Override
+            public List<String> labels() {
+                return meterConfig.labels();
+            }
+
+            @Override
+            public CollectionMode collectionMode() {
+                return meterConfig.collectionMode();
+            }
+
+            @Override
+            public int collectionConcurrency() {
+                return meterConfig.collectionConcurrency();
+            }
+
+            @Override
+            public Optional<Duration> collectionDeadline() {
+                return meterConfig.collectionDeadline();
+            }
+
+            @Override
+            public Duration emptyGroupGracePeriod() {
+                return meterConfig.emptyGroupGracePeriod();
+            }
+
+            @Override
+            public Optional<String> meterLabel() {
+                return Optional.of(meterLabel);
+            }
+
+        };
+
+        return new OperatorConfig() {
+
+            @Override
+            public List<String> productNameMapping() {
+                return config.productNameMapping();
+            }
+
+            @Override
+            public String scrapeInterval() {
+                return config.scrapeInterval();
+            }
+
+            @Override
+            public Duration statusUpdateInterval() {
+                return config.statusUpdateInterval();
+            }
+
+            @Override
+            public MeterConfig meter() {
+                return labelledMeterConfig;
+            }
+
+            @Override
+            public PodConfig pod() {
+                return config.pod();
+            }
+
+            @Override
+            public List<String> allowedProductNames() {
+                return config.allowedProductNames();
+            }
+
+        };
+    }
+
     public static OperatorConfig emptyOperatorConfig() {
         return new OperatorConfig() {
 
@@ -152,6 +380,11 @@ public class TestUtil {
                 return null;
             }
 
+            @Override
+            public Duration statusUpdateInterval() {
+                return null;
+            }
+
             @Override
             public MeterConfig meter() {
                 return emptyMeterConfig();
@@ -169,4 +402,38 @@ public class TestUtil {
 
         };
     }
+
+    // Starts the event sources of a controller, handing their events to the handler rather than to the operator
+    public static EventSourceManager eventSourceManager(final EventHandler eventHandler) {
+        return new EventSourceManager() {
+            private final Map<String, EventSource> eventSources = new HashMap<>();
+
+            @Override
+            public void registerEventSource(String name, EventSource eventSource) {
+                eventSource.setEventHandler(eventHandler);
+                eventSource.start();
+                eventSources.put(name, eventSource);
+            }
+
+            @Override
+            public Optional<EventSource> deRegisterEventSource(String name) {
+                return Optional.ofNullable(eventSources.remove(name));
+            }
+
+            @Override
+            public Optional<EventSource> deRegisterCustomResourceFromEventSource(String name, String customResourceUid) {
+                final EventSource eventSource = eventSources.get(name);
+                if (eventSource != null) {
+                    eventSource.eventSourceDeRegisteredForResource(customResourceUid);
+                }
+                return Optional.ofNullable(eventSource);
+            }
+
+            @Override
+            public Map<String, EventSource> getRegisteredEventSources() {
+                return Collections.unmodifiableMap(eventSources);
+            }
+
+        };
+    }
 }
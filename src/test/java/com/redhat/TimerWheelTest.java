@@ -0,0 +1,58 @@
+package com.redhat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+    @Test
+    void testExpiry() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4, 0);
+        wheel.schedule("first", 25, 0);
+        wheel.schedule("second", 100, 0);
+
+        assertTrue(wheel.advance(20).isEmpty());
+        assertEquals(List.of("first"), wheel.advance(30));
+        // Wraps around the wheel more than once before expiring
+        assertTrue(wheel.advance(90).isEmpty());
+        assertEquals(List.of("second"), wheel.advance(100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancel() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4, 0);
+        wheel.schedule("first", 10, 0);
+
+        assertTrue(wheel.cancel("first"));
+        assertFalse(wheel.cancel("first"));
+        assertTrue(wheel.advance(50).isEmpty());
+    }
+
+    @Test
+    void testRescheduled() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4, 0);
+        wheel.schedule("first", 10, 0);
+        wheel.schedule("first", 50, 0);
+
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance(40).isEmpty());
+        assertEquals(List.of("first"), wheel.advance(50));
+    }
+
+    @Test
+    void testLargeAdvance() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 4, 0);
+        wheel.schedule("first", 10, 0);
+        wheel.schedule("second", 30, 0);
+        wheel.schedule("third", 1000, 0);
+
+        assertEquals(2, wheel.advance(500).size());
+        assertEquals(List.of("third"), wheel.advance(1000));
+    }
+}